@@ -0,0 +1,360 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Throughput benchmarks for the game engines, the evaluator and whole games, all on fixed seeds so that every run
+//measures the same work. Each benchmark is warmed up, then measured over several fixed-length iterations, and
+//reported as operations per second (mean and standard deviation over the iterations).
+//
+//JMH cannot be used here: it refuses benchmark classes in the default package, and everything in this project lives
+//in the default package, where it cannot be imported from a named one. This harness follows the same method on a
+//smaller scale.
+//
+//Usage: Benchmark [--save FILE] [--compare FILE] [--filter TEXT]
+//  --save     writes the results to FILE, to be used as a baseline
+//  --compare  prints the change of each result against a baseline written with --save
+//  --filter   only runs the benchmarks whose name contains TEXT
+public class Benchmark {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	private static final long ITERATION_NANOS = 1000000000L;
+	private static final long SEED = 3243;
+	private static final int NUM_POSITIONS = 2000; //Positions recorded from a greedy game, for the per-turn benchmarks
+	private static final int NUM_GAMES = 4; //Games per operation of the end-to-end benchmarks
+
+	//Used if weights.txt cannot be read
+	private static final double[] DEFAULT_WEIGHTS = {
+		-0.001, -0.002, -0.002, -0.002, -0.002, -0.002, -0.002, -0.002, -0.002, -0.001,
+		-0.003, -0.001, -0.002, -0.001, -0.002, -0.001, -0.002, -0.001, -0.002, -0.001, -0.008
+	};
+
+    //================================================================================
+    // Benchmarks
+    //================================================================================
+
+	//One operation of a benchmark
+	private interface Operation {
+		//Runs the operation once and returns a value derived from its result, so that it cannot be optimized away
+		long run();
+	}
+
+	private final double[] weights;
+	private final RecordedGame game;
+	private final Map<String, double[]> results = new LinkedHashMap<>();
+	private long sink = 0;
+
+	public Benchmark(double[] weights) {
+		this.weights = weights;
+		game = new RecordedGame(SEED, weights, NUM_POSITIONS);
+		System.out.println("Recorded game: " + game.getMoves().length + " moves, " + game.getRowsCleared() + " rows");
+	}
+
+	private void runAll(String filter) {
+		final int[] gamePieces = game.getPieces();
+		final int[][] gameMoves = game.getMoves();
+
+		//Replaying the recorded game measures the engine alone, since the moves are already chosen
+		run(filter, "state.makeMove", gameMoves.length, new Operation() {
+			@Override
+			public long run() {
+				State s = new State(new SequencePieceGenerator(gamePieces));
+
+				for (int[] move : gameMoves) {
+					s.makeMove(move);
+				}
+
+				return s.getRowsCleared();
+			}
+		});
+
+		run(filter, "bitboard.makeMove", gameMoves.length, new Operation() {
+			@Override
+			public long run() {
+				BitboardState s = new BitboardState(new SequencePieceGenerator(gamePieces));
+
+				for (int[] move : gameMoves) {
+					s.makeMove(move);
+				}
+
+				return s.getRowsCleared();
+			}
+		});
+
+		final SimulationBoard board = new SimulationBoard();
+
+		run(filter, "simulate.makeUndo", 1, new Operation() {
+			private int i = 0;
+
+			@Override
+			public long run() {
+				int p = i++ % game.getNumPositions();
+				board.load(game.getField(p), game.getTop(p));
+				int piece = game.getPiece(p);
+				long sum = 0;
+
+				for (int m = 0; m < PieceCatalog.numMoves(piece); m++) {
+					sum += board.makeMove(piece, PieceCatalog.moveOrient(piece, m), PieceCatalog.moveSlot(piece, m));
+					board.undo();
+				}
+
+				return sum;
+			}
+		});
+
+		final BatchEvaluator batch = new BatchEvaluator(weights.length);
+
+		run(filter, "evaluate.turn", 1, new Operation() {
+			private int i = 0;
+
+			@Override
+			public long run() {
+				int p = i++ % game.getNumPositions();
+				board.load(game.getField(p), game.getTop(p));
+				batch.fill(board, game.getPiece(p));
+				batch.score(weights);
+				return batch.bestMove();
+			}
+		});
+
+		final int[] features = new int[FeatureKernel.NUM_FEATURES];
+		final List<int[]> columns = new ArrayList<>();
+
+		for (int p = 0; p < game.getNumPositions(); p++) {
+			board.load(game.getField(p), game.getTop(p));
+			columns.add(board.getColumns().clone());
+		}
+
+		run(filter, "features.kernel", 1, new Operation() {
+			private int i = 0;
+
+			@Override
+			public long run() {
+				int p = i++ % game.getNumPositions();
+				FeatureKernel.extract(columns.get(p), game.getTop(p), features);
+				return features[FeatureKernel.HOLES] + features[FeatureKernel.CUMULATIVE_WELLS];
+			}
+		});
+
+		//16 rows filled except for the last column - a vertical I piece there clears 4 rows
+		final int[][] clearField = new int[State.ROWS][State.COLS];
+		final int[] clearTop = new int[State.COLS];
+
+		for (int r = 0; r < 16; r++) {
+			for (int c = 0; c < State.COLS - 1; c++) {
+				clearField[r][c] = 1;
+			}
+		}
+
+		for (int c = 0; c < State.COLS - 1; c++) {
+			clearTop[c] = 16;
+		}
+
+		board.load(clearField, clearTop);
+
+		run(filter, "simulate.lineClear", 1, new Operation() {
+			@Override
+			public long run() {
+				int cleared = board.makeMove(1, 0, State.COLS - 1);
+				board.undo();
+				return cleared;
+			}
+		});
+
+		//The same NUM_GAMES seeds on every call
+		run(filter, "game.state", NUM_GAMES, new Operation() {
+			@Override
+			public long run() {
+				long sum = 0;
+
+				for (int g = 0; g < NUM_GAMES; g++) {
+					State s = new State(SEED + g);
+
+					while (!s.hasLost()) {
+						s.makeMove(GreedyPolicy.pickMove(s, board, batch, weights));
+					}
+
+					sum += s.getRowsCleared();
+				}
+
+				return sum;
+			}
+		});
+
+		run(filter, "game.pool", NUM_GAMES, new Operation() {
+			@Override
+			public long run() {
+				long[] seeds = new long[NUM_GAMES];
+
+				for (int g = 0; g < NUM_GAMES; g++) {
+					seeds[g] = SEED + g;
+				}
+
+				long sum = 0;
+
+				for (int score : new GamePool(NUM_GAMES, weights).play(seeds)) {
+					sum += score;
+				}
+
+				return sum;
+			}
+		});
+	}
+
+	//Warms up and measures one benchmark. opsPerCall is the number of operations one call of the operation counts as.
+	private void run(String filter, String name, int opsPerCall, Operation operation) {
+		if (filter != null && !name.contains(filter)) {
+			return;
+		}
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iteration(opsPerCall, operation);
+		}
+
+		double[] scores = new double[MEASUREMENT_ITERATIONS];
+
+		for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+			scores[i] = iteration(opsPerCall, operation);
+		}
+
+		double mean = 0;
+
+		for (double score : scores) {
+			mean += score / MEASUREMENT_ITERATIONS;
+		}
+
+		double variance = 0;
+
+		for (double score : scores) {
+			variance += (score - mean) * (score - mean) / Math.max(1, MEASUREMENT_ITERATIONS - 1);
+		}
+
+		results.put(name, new double[] {mean, Math.sqrt(variance)});
+		System.out.printf("%-20s %15.1f ops/s  +- %.1f%n", name, mean, Math.sqrt(variance));
+	}
+
+	//Calls the operation until ITERATION_NANOS have passed and returns the operations per second.
+	private double iteration(int opsPerCall, Operation operation) {
+		long start = System.nanoTime();
+		long end = start + ITERATION_NANOS;
+		long calls = 0;
+		long now;
+
+		do {
+			sink += operation.run();
+			calls++;
+			now = System.nanoTime();
+		} while (now < end);
+
+		return (double) calls * opsPerCall / ((now - start) / 1e9);
+	}
+
+    //================================================================================
+    // Baselines
+    //================================================================================
+
+	private void save(String fileName) throws FileNotFoundException {
+		PrintWriter pw = new PrintWriter(new File(fileName));
+		pw.println("# " + machine());
+
+		for (Map.Entry<String, double[]> result : results.entrySet()) {
+			pw.println(result.getKey() + " " + result.getValue()[0] + " " + result.getValue()[1]);
+		}
+
+		pw.flush();
+		pw.close();
+	}
+
+	private void compare(String fileName) throws IOException {
+		File f = new File(fileName);
+
+		if (!f.exists()) {
+			System.out.println("No baseline at " + fileName + " - run with --save " + fileName + " to create one");
+			return;
+		}
+
+		BufferedReader br = new BufferedReader(new FileReader(f));
+		String line;
+		System.out.println("Compared with " + fileName + ":");
+		System.out.println("  this run: " + machine());
+
+		while ((line = br.readLine()) != null) {
+			if (line.startsWith("#")) {
+				System.out.println("  baseline: " + line.substring(1).trim());
+				continue;
+			}
+
+			String[] parts = line.trim().split("\\s+");
+			double[] result = results.get(parts[0]);
+
+			if (parts.length >= 2 && result != null) {
+				double baseline = Double.parseDouble(parts[1]);
+				System.out.printf("%-20s %+7.1f%%%n", parts[0], (result[0] / baseline - 1) * 100);
+			}
+		}
+
+		br.close();
+	}
+
+	//The machine and JDK a run is on, recorded with a baseline, which is only comparable with runs on the same ones
+	private static String machine() {
+		return Runtime.getRuntime().availableProcessors() + " cores " + System.getProperty("os.arch") + " "
+				+ System.getProperty("os.name") + ", " + System.getProperty("java.vm.name") + " "
+				+ System.getProperty("java.version");
+	}
+
+	private static double[] readWeights(String fileName) {
+		try {
+			return GreedyPolicy.readWeights(fileName);
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Could not read " + fileName + ", using the default weights");
+			return DEFAULT_WEIGHTS.clone();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String saveFile = null;
+		String compareFile = null;
+		String filter = null;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "--save":
+					saveFile = args[i+1];
+					break;
+				case "--compare":
+					compareFile = args[i+1];
+					break;
+				case "--filter":
+					filter = args[i+1];
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		Benchmark benchmark = new Benchmark(readWeights("weights.txt"));
+		benchmark.runAll(filter);
+
+		if (saveFile != null) {
+			benchmark.save(saveFile);
+		}
+
+		if (compareFile != null) {
+			benchmark.compare(compareFile);
+		}
+
+		System.out.println("(checksum " + benchmark.sink + ")");
+	}
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+
+//Checks FeatureKernel against straightforward square-by-square definitions of its features, on the boards reached by
+//every move of every position of the seeded game the benchmarks record (see RecordedGame).
+public class FeatureKernelCheck {
+
+	private static final long SEED = 3243;
+	private static final int NUM_POSITIONS = 2000;
+	private static final String[] NAMES = new String[FeatureKernel.NUM_FEATURES];
+
+	static {
+		for (int c = 0; c < State.COLS; c++) {
+			NAMES[FeatureKernel.COL_HEIGHT + c] = "height of column " + c;
+		}
+
+		for (int c = 0; c < State.COLS - 1; c++) {
+			NAMES[FeatureKernel.ADJ_HEIGHT_DIFF + c] = "height difference " + c;
+		}
+
+		NAMES[FeatureKernel.MAX_HEIGHT] = "maximum height";
+		NAMES[FeatureKernel.HOLES] = "holes";
+		NAMES[FeatureKernel.ROW_TRANSITIONS] = "row transitions";
+		NAMES[FeatureKernel.COL_TRANSITIONS] = "column transitions";
+		NAMES[FeatureKernel.CUMULATIVE_WELLS] = "cumulative wells";
+		NAMES[FeatureKernel.ROWS_WITH_HOLES] = "rows with holes";
+		NAMES[FeatureKernel.LANDING_HEIGHT] = "landing height";
+		NAMES[FeatureKernel.ERODED_CELLS] = "eroded cells";
+	}
+
+	public static void main(String[] args) throws IOException {
+		RecordedGame game = new RecordedGame(SEED, GreedyPolicy.readWeights("weights.txt"), NUM_POSITIONS);
+		SimulationBoard board = new SimulationBoard();
+		int[] features = new int[FeatureKernel.NUM_FEATURES];
+		int[] expected = new int[FeatureKernel.NUM_FEATURES];
+		long boards = 0;
+
+		for (int p = 0; p < game.getNumPositions(); p++) {
+			int piece = game.getPiece(p);
+			board.load(game.getField(p), game.getTop(p));
+
+			for (int m = 0; m < PieceCatalog.numMoves(piece); m++) {
+				if (board.makeMove(piece, PieceCatalog.moveOrient(piece, m), PieceCatalog.moveSlot(piece, m))
+						!= Integer.MIN_VALUE) {
+					FeatureKernel.extract(board, features);
+					reference(board.getField(), expected);
+					//The last-move features come from the board, which SimulationBoardCheck checks
+					expected[FeatureKernel.LANDING_HEIGHT] = board.getLastLandingHeight();
+					expected[FeatureKernel.ERODED_CELLS] = board.getLastErodedCells();
+
+					for (int f = 0; f < FeatureKernel.NUM_FEATURES; f++) {
+						if (features[f] != expected[f]) {
+							throw new IllegalStateException("Position " + p + ", move " + m + ": " + NAMES[f] + " is "
+									+ features[f] + ", reference gives " + expected[f]);
+						}
+					}
+
+					boards++;
+				}
+
+				board.undo();
+			}
+		}
+
+		System.out.println("FeatureKernelCheck: features of " + boards + " boards matched the reference");
+	}
+
+	//Computes the board features of the field one square at a time.
+	private static void reference(int[][] field, int[] features) {
+		int[] top = new int[State.COLS];
+		int maxHeight = 0;
+		int holes = 0;
+
+		for (int c = 0; c < State.COLS; c++) {
+			for (int r = 0; r < State.ROWS; r++) {
+				if (field[r][c] != 0) {
+					top[c] = r + 1;
+				}
+			}
+
+			for (int r = 0; r < top[c]; r++) {
+				holes += field[r][c] == 0 ? 1 : 0;
+			}
+
+			features[FeatureKernel.COL_HEIGHT + c] = top[c];
+			maxHeight = Math.max(maxHeight, top[c]);
+		}
+
+		for (int c = 0; c < State.COLS - 1; c++) {
+			features[FeatureKernel.ADJ_HEIGHT_DIFF + c] = Math.abs(top[c] - top[c+1]);
+		}
+
+		features[FeatureKernel.MAX_HEIGHT] = maxHeight;
+		features[FeatureKernel.HOLES] = holes;
+
+		//Changes between filled and empty along each row, the walls counting as filled
+		int rowTransitions = 0;
+		int rowsWithHoles = 0;
+
+		for (int r = 0; r < State.ROWS; r++) {
+			boolean previous = true;
+			boolean hasHole = false;
+
+			for (int c = 0; c <= State.COLS; c++) {
+				boolean filled = c == State.COLS || field[r][c] != 0;
+				rowTransitions += filled != previous ? 1 : 0;
+				previous = filled;
+				hasHole |= c < State.COLS && !filled && r < top[c];
+			}
+
+			rowsWithHoles += hasHole ? 1 : 0;
+		}
+
+		//Changes between filled and empty up each column, the floor counting as filled
+		int colTransitions = 0;
+
+		for (int c = 0; c < State.COLS; c++) {
+			boolean previous = true;
+
+			for (int r = 0; r < State.ROWS; r++) {
+				boolean filled = field[r][c] != 0;
+				colTransitions += filled != previous ? 1 : 0;
+				previous = filled;
+			}
+		}
+
+		//Every run of d open squares with filled squares or walls on both sides adds 1 + 2 + ... + d
+		int wells = 0;
+
+		for (int c = 0; c < State.COLS; c++) {
+			int depth = 0;
+
+			for (int r = State.ROWS - 1; r >= -1; r--) {
+				boolean well = r >= top[c]
+						&& (c == 0 || field[r][c-1] != 0)
+						&& (c == State.COLS - 1 || field[r][c+1] != 0);
+
+				if (well) {
+					depth++;
+				} else {
+					wells += depth * (depth + 1) / 2;
+					depth = 0;
+				}
+			}
+		}
+
+		features[FeatureKernel.ROW_TRANSITIONS] = rowTransitions;
+		features[FeatureKernel.COL_TRANSITIONS] = colTransitions;
+		features[FeatureKernel.CUMULATIVE_WELLS] = wells;
+		features[FeatureKernel.ROWS_WITH_HOLES] = rowsWithHoles;
+	}
+}
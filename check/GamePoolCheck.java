@@ -0,0 +1,34 @@
+import java.io.IOException;
+
+//Checks that GamePool plays the same games as BatchRunner: the same seeds must give the same scores, game for game.
+//The pool is narrower than the number of games, so finished games are compacted out and their slots refilled.
+public class GamePoolCheck {
+
+	private static final long FIRST_SEED = 3243;
+	private static final int NUM_GAMES = 24;
+	private static final int POOL_WIDTH = 5;
+
+	public static void main(String[] args) throws IOException {
+		double[] weights = GreedyPolicy.readWeights("weights.txt");
+		BatchRunner runner = new BatchRunner(weights);
+		int[] expected = runner.playGames(NUM_GAMES, FIRST_SEED);
+		runner.getScheduler().shutdown();
+
+		long[] seeds = new long[NUM_GAMES];
+
+		for (int g = 0; g < NUM_GAMES; g++) {
+			seeds[g] = FIRST_SEED + g;
+		}
+
+		int[] scores = new GamePool(POOL_WIDTH, weights).play(seeds);
+
+		for (int g = 0; g < NUM_GAMES; g++) {
+			if (scores[g] != expected[g]) {
+				throw new IllegalStateException("Seed " + seeds[g] + ": GamePool scored " + scores[g] + ", BatchRunner "
+						+ expected[g]);
+			}
+		}
+
+		System.out.println("GamePoolCheck: " + NUM_GAMES + " games scored the same as BatchRunner");
+	}
+}
@@ -0,0 +1,226 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+//Checks the statistics the tuning races decide on, with synthetic scores: PairedComparison and TruncatedScoreEstimate
+//against values worked out by hand, and StatisticalRace on many random races - a clearly dominated candidate must be
+//eliminated, at least numSurvivors unprotected candidates must always be left, and protected or eliminated
+//candidates must never change state.
+public class RaceCheck {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	private static final double TOLERANCE = 1e-9;
+	private static final double Z = 1.645;
+	private static final int NUM_RACES = 2000;
+	private static final int GAMES_PER_ROUND = 5;
+	private static final int MAX_ROUNDS = 10;
+
+	public static void main(String[] args) {
+		checkPairedComparison();
+		checkTruncatedScoreEstimate();
+		checkDominated();
+		int[] totals = checkRandomRaces();
+		System.out.println("RaceCheck: statistics matched by hand, " + NUM_RACES + " random races of " + totals[0]
+				+ " rounds eliminated " + totals[1] + " candidates and kept their survivors");
+	}
+
+    //================================================================================
+    // PairedComparison and TruncatedScoreEstimate
+    //================================================================================
+
+	private static void checkPairedComparison() {
+		//Differences 2, 1, 3, 2: mean 2, sample variance 2/3, standard error sqrt(2/3 / 4)
+		PairedComparison paired = new PairedComparison(new int[] {10, 12, 14, 16}, new int[] {8, 11, 11, 14});
+		compare("paired mean of A", 13, paired.getMeanA());
+		compare("paired mean of B", 11, paired.getMeanB());
+		compare("paired mean difference", 2, paired.getMeanDifference());
+		compare("paired standard error", Math.sqrt(1.0 / 6), paired.getStdError());
+		compare("paired t statistic", 2 / Math.sqrt(1.0 / 6), paired.getTStatistic());
+		//Variances 20/3 and 6 against 2/3
+		compare("paired efficiency", 19, paired.getEfficiency());
+		check("A is better than B", paired.isBetter(Z));
+		check("B is not better than A",
+				!new PairedComparison(new int[] {8, 11, 11, 14}, new int[] {10, 12, 14, 16}).isBetter(Z));
+
+		//The same difference in every game is infinitely significant, no difference not at all
+		PairedComparison constant = new PairedComparison(new int[] {5, 7, 9}, new int[] {4, 6, 8});
+		compare("constant difference t statistic", Double.POSITIVE_INFINITY, constant.getTStatistic());
+		check("a constant lead is better", constant.isBetter(Z));
+		PairedComparison equal = new PairedComparison(new int[] {5, 7, 9}, new int[] {5, 7, 9});
+		compare("equal scores t statistic", 0, equal.getTStatistic());
+		check("equal scores are not better", !equal.isBetter(Z));
+	}
+
+	private static void checkTruncatedScoreEstimate() {
+		int[] scores = {100, 200, 300, 400};
+
+		//All lost: the plain average, with a Poisson interval of 1000 / (sqrt(4) -+ 1.96 / 2)^2
+		TruncatedScoreEstimate all = new TruncatedScoreEstimate(scores, new boolean[] {true, true, true, true});
+		compare("all lost: mean", 250, all.getMean());
+		compare("all lost: lower", 1000 / (2.98 * 2.98), all.getLower(1.96));
+		compare("all lost: upper", 1000 / (1.02 * 1.02), all.getUpper(1.96));
+		compare("all lost: truncated", 0, all.getNumTruncated());
+
+		//Two of four lost: 1000 rows over 2 losses
+		TruncatedScoreEstimate half = new TruncatedScoreEstimate(scores, new boolean[] {true, false, true, false});
+		compare("half lost: mean", 500, half.getMean());
+		compare("half lost: lower", 1000 / Math.pow(Math.sqrt(2) + 0.98, 2), half.getLower(1.96));
+		compare("half lost: upper", 1000 / Math.pow(Math.sqrt(2) - 0.98, 2), half.getUpper(1.96));
+		compare("half lost: truncated", 2, half.getNumTruncated());
+		check("half lost: bounded", half.isBounded());
+
+		//None lost: no upper bound, and a lower bound of 1000 / (1.96 / 2)^2
+		TruncatedScoreEstimate none = new TruncatedScoreEstimate(scores, new boolean[4]);
+		check("none lost: unbounded", !none.isBounded());
+		compare("none lost: mean", Double.POSITIVE_INFINITY, none.getMean());
+		compare("none lost: lower", 1000 / (0.98 * 0.98), none.getLower(1.96));
+		compare("none lost: upper", Double.POSITIVE_INFINITY, none.getUpper(1.96));
+		compare("none lost: truncated", 4, none.getNumTruncated());
+	}
+
+    //================================================================================
+    // StatisticalRace
+    //================================================================================
+
+	//Three candidates play alike, the fourth scores 500 less on every seed: it must go after the first round, and the
+	//others must stay, since none of them can be told apart.
+	private static void checkDominated() {
+		StatisticalRace race = new StatisticalRace(4, GAMES_PER_ROUND * MAX_ROUNDS, 1, Z);
+		int[][] roundScores = new int[4][GAMES_PER_ROUND];
+
+		for (int g = 0; g < GAMES_PER_ROUND; g++) {
+			int seedScore = 1000 + 300 * g;
+			roundScores[0][g] = seedScore + (g % 2 == 0 ? 10 : -10);
+			roundScores[1][g] = seedScore + (g % 2 == 0 ? -10 : 10);
+			roundScores[2][g] = seedScore;
+			roundScores[3][g] = seedScore - 500 + (g % 3) * 5;
+		}
+
+		race.addRound(race.getAlive(), roundScores);
+		check("the dominated candidate is eliminated", !race.isAlive(3));
+		check("the even candidates stay", race.isAlive(0) && race.isAlive(1) && race.isAlive(2));
+
+		//A protected candidate is never eliminated, however badly it plays
+		StatisticalRace protectedRace = new StatisticalRace(4, GAMES_PER_ROUND * MAX_ROUNDS, 1, Z);
+		protectedRace.protect(3);
+		protectedRace.addRound(protectedRace.getAlive(), roundScores);
+		check("the protected candidate stays", protectedRace.isAlive(3));
+		check("the race with a protected candidate is not finished", !protectedRace.isFinished());
+	}
+
+	//Races random candidates, some much weaker than others, and checks the invariants after every round. Returns the
+	//number of rounds played and of candidates eliminated in all.
+	private static int[] checkRandomRaces() {
+		SplittableRandom random = new SplittableRandom(3243);
+		int totalRounds = 0;
+		int eliminated = 0;
+
+		for (int r = 0; r < NUM_RACES; r++) {
+			int numCandidates = 2 + random.nextInt(9);
+			int numSurvivors = 1 + random.nextInt(numCandidates - 1);
+			StatisticalRace race = new StatisticalRace(numCandidates, GAMES_PER_ROUND * MAX_ROUNDS, numSurvivors, Z);
+			boolean[] isProtected = new boolean[numCandidates];
+			int[] strength = new int[numCandidates];
+			int numRacing = 0;
+
+			for (int c = 0; c < numCandidates; c++) {
+				isProtected[c] = random.nextInt(4) == 0;
+				strength[c] = random.nextInt(3) * 400;
+				numRacing += isProtected[c] ? 0 : 1;
+
+				if (isProtected[c]) {
+					race.protect(c);
+				}
+			}
+
+			boolean[] wasAlive = new boolean[numCandidates];
+			Arrays.fill(wasAlive, true);
+			int[][] history = new int[numCandidates][GAMES_PER_ROUND * MAX_ROUNDS];
+			int games = 0;
+
+			for (int round = 0; round < MAX_ROUNDS && !race.isFinished(); round++) {
+				int[] alive = race.getAlive();
+				int[][] roundScores = new int[alive.length][GAMES_PER_ROUND];
+				boolean[][] roundLost = new boolean[alive.length][GAMES_PER_ROUND];
+
+				for (int g = 0; g < GAMES_PER_ROUND; g++) {
+					int seedScore = 500 + random.nextInt(2000);
+
+					for (int i = 0; i < alive.length; i++) {
+						roundScores[i][g] = seedScore + strength[alive[i]] + random.nextInt(300);
+						roundLost[i][g] = random.nextInt(5) != 0;
+					}
+				}
+
+				race.addRound(alive, roundScores, roundLost);
+				totalRounds++;
+
+				for (int i = 0; i < alive.length; i++) {
+					System.arraycopy(roundScores[i], 0, history[alive[i]], games, GAMES_PER_ROUND);
+				}
+
+				games += GAMES_PER_ROUND;
+				boolean[] aliveBefore = wasAlive.clone();
+				int aliveRacing = 0;
+
+				for (int c = 0; c < numCandidates; c++) {
+					String where = "Race " + r + ", round " + round + ", candidate " + c;
+					check(where + ": protected and eliminated", !isProtected[c] || race.isAlive(c));
+					check(where + ": eliminated and back", wasAlive[c] || !race.isAlive(c));
+
+					if (wasAlive[c] && !race.isAlive(c)) {
+						check(where + ": eliminated without being beaten",
+								beatenBy(c, history, games, aliveBefore, isProtected) >= numSurvivors);
+						eliminated++;
+					}
+
+					wasAlive[c] = race.isAlive(c);
+					aliveRacing += race.isAlive(c) && !isProtected[c] ? 1 : 0;
+				}
+
+				check("Race " + r + ", round " + round + ": " + aliveRacing + " left of " + numSurvivors
+						+ " survivors", aliveRacing >= Math.min(numSurvivors, numRacing));
+			}
+		}
+
+		//Weak candidates are 400 or 800 rows worse on every seed, so the races must eliminate some
+		check("the random races eliminated candidates", eliminated > 0);
+		return new int[] {totalRounds, eliminated};
+	}
+
+	//The number of unprotected rivals alive before the round that beat the candidate on every game so far
+	private static int beatenBy(int candidate, int[][] history, int games, boolean[] wasAlive, boolean[] isProtected) {
+		int beatenBy = 0;
+		int[] scores = Arrays.copyOf(history[candidate], games);
+
+		for (int rival = 0; rival < history.length; rival++) {
+			if (rival != candidate && wasAlive[rival] && !isProtected[rival]
+					&& new PairedComparison(Arrays.copyOf(history[rival], games), scores).isBetter(Z)) {
+				beatenBy++;
+			}
+		}
+
+		return beatenBy;
+	}
+
+    //================================================================================
+    // Helpers
+    //================================================================================
+
+	private static void compare(String what, double expected, double actual) {
+		boolean same = Double.isInfinite(expected) ? expected == actual
+				: Math.abs(expected - actual) <= TOLERANCE * Math.max(1, Math.abs(expected));
+
+		if (!same) {
+			throw new IllegalStateException(what + " is " + actual + ", by hand " + expected);
+		}
+	}
+
+	private static void check(String what, boolean holds) {
+		if (!holds) {
+			throw new IllegalStateException("Failed: " + what);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+//Checks that games written by ReplayWriter read back unchanged through ReplayReader: seeded games played greedily -
+//some to the end and some stopped early, as a tuning budget stops them - and games on recorded piece sequences played
+//with random moves, so that every piece, orientation and slot is packed. Every header field and move must match, and
+//reconstructing a game must give the State of the original game, at its end and at a turn in the middle.
+public class ReplayCheck {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	private static final long FIRST_SEED = 3243;
+	private static final int NUM_SEEDED_GAMES = 3;
+	private static final int[] TRUNCATED_MOVES = {0, 1, 500};
+	private static final int NUM_SEQUENCE_GAMES = 200;
+	private static final int SEQUENCE_LENGTH = 1000;
+
+	//A game as it was played: its replay, its moves as (piece, orient, slot), and its State at the end and at the middle
+	private static class Played {
+		final ReplayWriter.Game replay;
+		final long seed;
+		final List<int[]> moves = new ArrayList<>();
+		State end;
+		State middle;
+
+		Played(ReplayWriter.Game replay, long seed) {
+			this.replay = replay;
+			this.seed = seed;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		double[] weights = GreedyPolicy.readWeights("weights.txt");
+		List<Played> games = new ArrayList<>();
+
+		for (int g = 0; g < NUM_SEEDED_GAMES; g++) {
+			games.add(playSeeded(FIRST_SEED + g, weights, Integer.MAX_VALUE));
+		}
+
+		for (int g = 0; g < TRUNCATED_MOVES.length; g++) {
+			games.add(playSeeded(FIRST_SEED + NUM_SEEDED_GAMES + g, weights, TRUNCATED_MOVES[g]));
+		}
+
+		SplittableRandom random = new SplittableRandom(FIRST_SEED);
+
+		for (int g = 0; g < NUM_SEQUENCE_GAMES; g++) {
+			games.add(playSequence(random));
+		}
+
+		Path file = Files.createTempFile("replaycheck", ".bin");
+
+		try {
+			ReplayWriter writer = new ReplayWriter(file);
+
+			try {
+				for (Played game : games) {
+					writer.write(game.replay);
+				}
+			} finally {
+				writer.close();
+			}
+
+			check(new ReplayReader(file), games);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+    //================================================================================
+    // Games
+    //================================================================================
+
+	//Plays a game greedily on the seed, stopping after maxMoves moves
+	private static Played playSeeded(long seed, double[] weights, int maxMoves) {
+		Played game = new Played(new ReplayWriter.Game(seed), seed);
+		State s = new State(seed);
+		SimulationBoard board = new SimulationBoard();
+		BatchEvaluator batch = new BatchEvaluator(weights.length);
+
+		while (!s.hasLost() && s.getTurnNumber() < maxMoves) {
+			int move = GreedyPolicy.pickMove(s, board, batch, weights);
+			record(game, s, PieceCatalog.moveOrient(s.getNextPiece(), move),
+					PieceCatalog.moveSlot(s.getNextPiece(), move));
+		}
+
+		return finish(game, s);
+	}
+
+	//Plays random legal moves on a random piece sequence until the game is lost
+	private static Played playSequence(SplittableRandom random) {
+		int[] pieces = new int[SEQUENCE_LENGTH];
+
+		for (int i = 0; i < pieces.length; i++) {
+			pieces[i] = random.nextInt(State.N_PIECES);
+		}
+
+		Played game = new Played(new ReplayWriter.Game(), 0);
+		State s = new State(new SequencePieceGenerator(pieces));
+
+		while (!s.hasLost()) {
+			int[] move = s.legalMoves()[random.nextInt(s.legalMoves().length)];
+			record(game, s, move[State.ORIENT], move[State.SLOT]);
+		}
+
+		return finish(game, s);
+	}
+
+	private static void record(Played game, State s, int orient, int slot) {
+		game.moves.add(new int[] {s.getNextPiece(), orient, slot});
+		game.replay.recordMove(s.getNextPiece(), orient, slot);
+		s.makeMove(orient, slot);
+	}
+
+	//Sets the result of the game, and replays it to its middle turn from scratch to keep that State too
+	private static Played finish(Played game, State s) {
+		game.replay.setRowsCleared(s.getRowsCleared());
+		game.end = s;
+		State middle;
+
+		if (game.seed != 0) {
+			middle = new State(game.seed);
+		} else {
+			int[] pieces = new int[game.moves.size() + 1];
+
+			for (int i = 0; i < game.moves.size(); i++) {
+				pieces[i] = game.moves.get(i)[0];
+			}
+
+			middle = new State(new SequencePieceGenerator(pieces));
+		}
+
+		for (int i = 0; i < game.moves.size() / 2; i++) {
+			middle.makeMove(game.moves.get(i)[1], game.moves.get(i)[2]);
+		}
+
+		game.middle = middle;
+		return game;
+	}
+
+    //================================================================================
+    // Checks
+    //================================================================================
+
+	private static void check(ReplayReader reader, List<Played> games) {
+		compare("number of games", games.size(), reader.getNumGames());
+		long moves = 0;
+
+		for (int g = 0; g < games.size(); g++) {
+			Played game = games.get(g);
+			String where = "Game " + g;
+			boolean seeded = game.seed != 0;
+
+			if (reader.isSeeded(g) != seeded) {
+				throw new IllegalStateException(where + ": read back as " + (seeded ? "a sequence" : "a seeded")
+						+ " game");
+			}
+
+			if (reader.getSeed(g) != game.seed) {
+				throw new IllegalStateException(where + ": seed " + reader.getSeed(g) + ", written " + game.seed);
+			}
+
+			compare(where + ": number of moves", game.moves.size(), reader.getNumMoves(g));
+			compare(where + ": rows cleared", game.end.getRowsCleared(), reader.getRowsCleared(g));
+
+			for (int m = 0; m < game.moves.size(); m++) {
+				int[] move = game.moves.get(m);
+
+				if (!seeded) {
+					compare(where + ", move " + m + ": piece", move[0], reader.getPiece(g, m));
+				}
+
+				compare(where + ", move " + m + ": orient", move[1], reader.getOrient(g, m));
+				compare(where + ", move " + m + ": slot", move[2], reader.getSlot(g, m));
+				moves++;
+			}
+
+			//The piece drawn after the last move of a sequence game is not recorded, so only a seeded game knows it
+			checkState(where + " at its end", game.end, reader.reconstruct(g, game.moves.size()), seeded);
+			checkState(where + " at turn " + game.moves.size() / 2, game.middle,
+					reader.reconstruct(g, game.moves.size() / 2), true);
+		}
+
+		System.out.println("ReplayCheck: " + games.size() + " games and " + moves
+				+ " moves read back and reconstructed");
+	}
+
+	private static void checkState(String where, State expected, State actual, boolean nextPieceKnown) {
+		compare(where + ": turn", expected.getTurnNumber(), actual.getTurnNumber());
+		compare(where + ": rows cleared", expected.getRowsCleared(), actual.getRowsCleared());
+
+		if (nextPieceKnown) {
+			compare(where + ": next piece", expected.getNextPiece(), actual.getNextPiece());
+		}
+
+		if (expected.hasLost() != actual.hasLost()) {
+			throw new IllegalStateException(where + ": lost is " + actual.hasLost() + ", played " + expected.hasLost());
+		}
+
+		for (int r = 0; r < State.ROWS; r++) {
+			for (int c = 0; c < State.COLS; c++) {
+				compare(where + ": square " + r + ", " + c, expected.getField()[r][c], actual.getField()[r][c]);
+			}
+		}
+	}
+
+	private static void compare(String what, int expected, int actual) {
+		if (expected != actual) {
+			throw new IllegalStateException(what + " is " + actual + ", written " + expected);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.util.Random;
+
+//Checks that pruning never changes the move ExpectimaxSearch picks, on positions of the seeded game the benchmarks
+//record (see RecordedGame).
+//
+//Pruning is exact only if PlayerSkeleton.upperBound(...) never underestimates what the given number of placements can
+//reach, so that is checked first, for every number of placements a search of up to SimulationBoard.MAX_DEPTH plies can
+//ask about: from every position, sequences of placements are played on random pieces - greedily and at random - and
+//their rewards plus final utility must never exceed the bound. Then the pruned and the exhaustive search must pick the
+//same move at every depth from 2 to 3, or to the depth given as the first argument. An exhaustive search of depth 4
+//takes about 20 seconds per move, so deeper searches are only checked on a few positions, and only when asked for.
+//
+//Usage: SearchCheck [maxDepth]
+public class SearchCheck {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	private static final long SEED = 3243;
+	private static final int NUM_POSITIONS = 2000;
+	private static final int BOUND_POSITION_STEP = 20; //Every 20th position is used to check the bound...
+	private static final int SEQUENCES = 50; //...with this many placement sequences per number of placements
+	private static final int DEFAULT_MAX_DEPTH = 3;
+	//Positions between the ones searched at depth 2, 3 and deeper
+	private static final int[] SEARCH_POSITION_STEP = {100, 200, 1000};
+	private static final long NO_TIME_LIMIT = 24 * 60 * 60 * 1000; //Milliseconds - a day
+
+	public static void main(String[] args) throws IOException {
+		PlayerSkeleton evaluator = new PlayerSkeleton();
+		RecordedGame game = new RecordedGame(SEED, GreedyPolicy.readWeights("weights.txt"), NUM_POSITIONS);
+		checkUpperBound(evaluator, game);
+		checkPruning(evaluator, game, args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_DEPTH);
+	}
+
+    //================================================================================
+    // Checks
+    //================================================================================
+
+	private static void checkUpperBound(PlayerSkeleton evaluator, RecordedGame game) {
+		SimulationBoard board = new SimulationBoard();
+		Random random = new Random(SEED);
+		int sequences = 0;
+
+		for (int p = 0; p < game.getNumPositions(); p += BOUND_POSITION_STEP) {
+			for (int placements = 1; placements < SimulationBoard.MAX_DEPTH; placements++) {
+				board.load(game.getField(p), game.getTop(p));
+				double bound = evaluator.upperBound(board, placements);
+
+				for (int i = 0; i < SEQUENCES; i++) {
+					double value = playSequence(evaluator, board, placements, random, i % 2 == 0);
+
+					if (value > bound + 1e-9 * Math.abs(bound)) {
+						throw new IllegalStateException("upperBound(" + placements + ") = " + bound + " at position " + p
+								+ ", but a sequence reached " + value);
+					}
+
+					sequences++;
+				}
+			}
+		}
+
+		System.out.println("SearchCheck: upperBound held for " + sequences + " placement sequences");
+	}
+
+	//Plays the given number of placements of random pieces on the board, each either the greedy choice or a random one,
+	//and returns their total reward plus the utility of the final board, or -infinity if the sequence loses. The board
+	//is left unchanged.
+	private static double playSequence(PlayerSkeleton evaluator, SimulationBoard board, int placements, Random random,
+			boolean greedy) {
+		double reward = 0;
+		int made = 0;
+
+		for (; made < placements; made++) {
+			int piece = random.nextInt(State.N_PIECES);
+			int move = greedy ? greedyMove(evaluator, board, piece) : random.nextInt(PieceCatalog.numMoves(piece));
+			int rows = board.makeMove(piece, PieceCatalog.moveOrient(piece, move), PieceCatalog.moveSlot(piece, move));
+
+			if (rows == Integer.MIN_VALUE) {
+				made++;
+				break;
+			}
+
+			reward += rows;
+		}
+
+		double value = made == placements && reward >= 0 ? reward + evaluator.evaluate(board) : Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < made; i++) {
+			board.undo();
+		}
+
+		return value;
+	}
+
+	private static int greedyMove(PlayerSkeleton evaluator, SimulationBoard board, int piece) {
+		int best = 0;
+		double bestValue = Double.NEGATIVE_INFINITY;
+
+		for (int m = 0; m < PieceCatalog.numMoves(piece); m++) {
+			int rows = board.makeMove(piece, PieceCatalog.moveOrient(piece, m), PieceCatalog.moveSlot(piece, m));
+			double value = rows == Integer.MIN_VALUE ? Double.NEGATIVE_INFINITY : rows + evaluator.evaluate(board);
+			board.undo();
+
+			if (value > bestValue) {
+				bestValue = value;
+				best = m;
+			}
+		}
+
+		return best;
+	}
+
+	private static void checkPruning(PlayerSkeleton evaluator, RecordedGame game, int maxDepth) {
+		int searches = 0;
+
+		for (int depth = 2; depth <= maxDepth; depth++) {
+			ExpectimaxSearch pruned = new ExpectimaxSearch(evaluator, null, depth, NO_TIME_LIMIT, true, false);
+			ExpectimaxSearch exhaustive = new ExpectimaxSearch(evaluator, null, depth, NO_TIME_LIMIT, false, false);
+			int step = SEARCH_POSITION_STEP[Math.min(depth - 2, SEARCH_POSITION_STEP.length - 1)];
+
+			for (int p = 0; p < game.getNumPositions(); p += step) {
+				int expected = exhaustive.pickMove(game.getField(p), game.getTop(p), game.getPiece(p));
+				int actual = pruned.pickMove(game.getField(p), game.getTop(p), game.getPiece(p));
+
+				if (actual != expected) {
+					throw new IllegalStateException("Depth " + depth + " at position " + p + ": pruned search picked move "
+							+ actual + ", exhaustive search " + expected);
+				}
+
+				searches++;
+			}
+		}
+
+		System.out.println("SearchCheck: pruned and exhaustive search agreed on " + searches + " searches of depth 2 to "
+				+ maxDepth);
+	}
+}
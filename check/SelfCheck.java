@@ -0,0 +1,13 @@
+//Runs every check in this directory; mvn test runs it after compiling them. Each check throws an exception describing
+//the first mismatch it finds, which fails the build.
+public class SelfCheck {
+
+	public static void main(String[] args) throws Exception {
+		SimulationBoardCheck.main(new String[0]);
+		FeatureKernelCheck.main(new String[0]);
+		SearchCheck.main(new String[0]);
+		GamePoolCheck.main(new String[0]);
+		ReplayCheck.main(new String[0]);
+		RaceCheck.main(new String[0]);
+	}
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+
+//Checks SimulationBoard against a plain rescan, on positions of the seeded game the benchmarks record (see
+//RecordedGame). Every move of the piece of every position is made on the board and on a reference copy of the field,
+//where the piece is dropped square by square and full rows are removed one at a time; the boards must match, and
+//every running aggregate the board keeps - tops, column bitmasks, holes, maximum height, adjacent height differences,
+//bumpiness, landing height, eroded cells and the Zobrist hash - must equal the value recomputed from the field. On
+//every 10th position a second move is made on top of each first one, and after the moves are undone the board must be
+//exactly as it was loaded.
+public class SimulationBoardCheck {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	private static final long SEED = 3243;
+	private static final int NUM_POSITIONS = 2000;
+	private static final int NESTED_POSITION_STEP = 10;
+
+	public static void main(String[] args) throws IOException {
+		RecordedGame game = new RecordedGame(SEED, GreedyPolicy.readWeights("weights.txt"), NUM_POSITIONS);
+		SimulationBoard board = new SimulationBoard();
+		SimulationBoard fresh = new SimulationBoard();
+		long moves = 0;
+
+		for (int p = 0; p < game.getNumPositions(); p++) {
+			int piece = game.getPiece(p);
+			int nextPiece = game.getPiece(Math.min(p + 1, game.getNumPositions() - 1));
+			board.load(game.getField(p), game.getTop(p));
+
+			for (int m = 0; m < PieceCatalog.numMoves(piece); m++) {
+				int[][] before = copy(board.getField());
+				int rows = checkMove(board, fresh, before, piece, m, "position " + p + ", move " + m);
+				moves++;
+
+				if (p % NESTED_POSITION_STEP == 0 && rows != Integer.MIN_VALUE) {
+					int[][] middle = copy(board.getField());
+
+					for (int n = 0; n < PieceCatalog.numMoves(nextPiece); n++) {
+						checkMove(board, fresh, middle, nextPiece, n, "position " + p + ", moves " + m + ", " + n);
+						board.undo();
+						check(board, fresh, middle, "position " + p + ", move " + m + " after undoing " + n);
+						moves++;
+					}
+				}
+
+				board.undo();
+				check(board, fresh, game.getField(p), "position " + p + " after undoing move " + m);
+			}
+		}
+
+		System.out.println("SimulationBoardCheck: " + moves + " moves matched the rescan");
+	}
+
+    //================================================================================
+    // Checks
+    //================================================================================
+
+	//Makes the move on the board, and checks its result and the board against the reference move on the field before.
+	//Returns the rows cleared, Integer.MIN_VALUE if the move lost.
+	private static int checkMove(SimulationBoard board, SimulationBoard fresh, int[][] before, int piece, int move,
+			String where) {
+		int orient = PieceCatalog.moveOrient(piece, move);
+		int slot = PieceCatalog.moveSlot(piece, move);
+		int[][] expected = copy(before);
+		int[] landing = new int[2]; //Landing height and eroded cells of the reference move
+		int expectedRows = referenceMove(expected, piece, orient, slot, landing);
+		int rows = board.makeMove(piece, orient, slot);
+
+		if (rows != expectedRows) {
+			fail(where, "rows cleared", expectedRows, rows);
+		}
+
+		check(board, fresh, expected, where);
+
+		if (rows == Integer.MIN_VALUE) {
+			return rows; //A lost move changes nothing, and leaves the features of the previous move
+		}
+
+		if (board.getLastLandingHeight() != landing[0]) {
+			fail(where, "landing height", landing[0], board.getLastLandingHeight());
+		}
+
+		if (board.getLastErodedCells() != landing[1]) {
+			fail(where, "eroded cells", landing[1], board.getLastErodedCells());
+		}
+
+		return rows;
+	}
+
+	//Checks that the board holds the given field, and that its aggregates match a rescan of it.
+	private static void check(SimulationBoard board, SimulationBoard fresh, int[][] field, String where) {
+		int[] top = new int[State.COLS];
+		int holes = 0;
+		int maxHeight = 0;
+		int bumpiness = 0;
+
+		for (int c = 0; c < State.COLS; c++) {
+			int cols = 0;
+
+			for (int r = 0; r < State.ROWS; r++) {
+				if ((field[r][c] != 0) != (board.getField()[r][c] != 0)) {
+					throw new IllegalStateException(where + ": square " + r + ", " + c + " differs from the rescan");
+				}
+
+				if (field[r][c] != 0) {
+					top[c] = r + 1;
+					cols |= 1 << r;
+				}
+			}
+
+			for (int r = 0; r < top[c]; r++) {
+				holes += field[r][c] == 0 ? 1 : 0;
+			}
+
+			maxHeight = Math.max(maxHeight, top[c]);
+			compare(where, "top of column " + c, top[c], board.getTop()[c]);
+			compare(where, "bitmask of column " + c, cols, board.getColumns()[c]);
+		}
+
+		for (int c = 0; c < State.COLS - 1; c++) {
+			compare(where, "height difference " + c, Math.abs(top[c] - top[c+1]), board.getAdjHeightDiff(c));
+			bumpiness += Math.abs(top[c] - top[c+1]);
+		}
+
+		compare(where, "holes", holes, board.getHoles());
+		compare(where, "maximum height", maxHeight, board.getMaxHeight());
+		compare(where, "bumpiness", bumpiness, board.getBumpiness());
+
+		fresh.load(field, top);
+
+		if (fresh.getHash() != board.getHash()) {
+			throw new IllegalStateException(where + ": hash " + board.getHash() + ", rescan " + fresh.getHash());
+		}
+	}
+
+    //================================================================================
+    // Reference move
+    //================================================================================
+
+	//Drops the piece into the field square by square from above until it rests, then removes full rows one at a time.
+	//Returns the rows cleared, or Integer.MIN_VALUE if the piece does not fit, and fills landing with the landing height
+	//of the middle of the piece, in half rows, and the eroded cells.
+	private static int referenceMove(int[][] field, int piece, int orient, int slot, int[] landing) {
+		int width = State.getpWidth()[piece][orient];
+		int height = State.getpHeight()[piece][orient];
+		int[] bottom = State.getpBottom()[piece][orient];
+		int[] pieceTop = State.getpTop()[piece][orient];
+		int row = State.ROWS;
+
+		while (row > 0 && fits(field, bottom, pieceTop, width, slot, row - 1)) {
+			row--;
+		}
+
+		if (row + height >= State.ROWS) {
+			return Integer.MIN_VALUE;
+		}
+
+		boolean[][] pieceSquare = new boolean[State.ROWS][State.COLS];
+
+		for (int c = 0; c < width; c++) {
+			for (int h = bottom[c]; h < pieceTop[c]; h++) {
+				field[row + h][slot + c] = 1;
+				pieceSquare[row + h][slot + c] = true;
+			}
+		}
+
+		int rowsCleared = 0;
+		int pieceSquaresCleared = 0;
+
+		for (int r = State.ROWS - 1; r >= 0; r--) {
+			boolean full = true;
+
+			for (int c = 0; c < State.COLS; c++) {
+				full &= field[r][c] != 0;
+			}
+
+			if (full) {
+				rowsCleared++;
+
+				for (int c = 0; c < State.COLS; c++) {
+					pieceSquaresCleared += pieceSquare[r][c] ? 1 : 0;
+				}
+
+				for (int i = r; i < State.ROWS - 1; i++) {
+					field[i] = field[i + 1];
+					pieceSquare[i] = pieceSquare[i + 1];
+				}
+
+				field[State.ROWS - 1] = new int[State.COLS];
+				pieceSquare[State.ROWS - 1] = new boolean[State.COLS];
+			}
+		}
+
+		landing[0] = 2 * row + height - 1; //In half rows, as SimulationBoard keeps it
+		landing[1] = rowsCleared * pieceSquaresCleared;
+
+		return rowsCleared;
+	}
+
+	//True if no square of the piece at the given row overlaps a filled square
+	private static boolean fits(int[][] field, int[] bottom, int[] pieceTop, int width, int slot, int row) {
+		for (int c = 0; c < width; c++) {
+			for (int h = bottom[c]; h < pieceTop[c]; h++) {
+				if (row + h < State.ROWS && field[row + h][slot + c] != 0) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static void compare(String where, String what, int expected, int actual) {
+		if (expected != actual) {
+			fail(where, what, expected, actual);
+		}
+	}
+
+	private static void fail(String where, String what, int expected, int actual) {
+		throw new IllegalStateException(where + ": " + what + " is " + actual + ", rescan gives " + expected);
+	}
+
+	private static int[][] copy(int[][] field) {
+		int[][] result = new int[field.length][];
+
+		for (int i = 0; i < field.length; i++) {
+			result[i] = field[i].clone();
+		}
+
+		return result;
+	}
+}
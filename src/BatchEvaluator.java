@@ -0,0 +1,98 @@
+//Evaluates all candidate moves of a turn as one batch. Each legal move is simulated once to fill one row of a flat,
+//row-major feature matrix (candidates x features) and its reward; the candidates are then scored together with a
+//single matrix-vector product against the weight vector. The product is a plain loop over primitive arrays with a
+//fixed stride, which the JIT can unroll and vectorize.
+//
+//The features of a row are laid out as in FeatureKernel - the 21 features of PlayerSkeleton.calculateUtility first,
+//then, if the weight vector is longer, the additional FeatureKernel features. One BatchEvaluator holds the scratch
+//matrix for one thread, and nothing is allocated per turn.
+public class BatchEvaluator {
+	
+	private static final int BASE_FEATURES = FeatureKernel.HOLES + 1;
+	
+	private final int numFeatures;
+	private final double[] matrix;
+	private final double[] rewards = new double[PieceCatalog.MAX_MOVES];
+	private final double[] scores = new double[PieceCatalog.MAX_MOVES];
+	private final int[] kernelFeatures = new int[FeatureKernel.NUM_FEATURES];
+	private int numRows = 0;
+	
+	public BatchEvaluator(int numFeatures) {
+		if (numFeatures < BASE_FEATURES || numFeatures > FeatureKernel.NUM_FEATURES) {
+			throw new IllegalArgumentException("Number of features must be between " + BASE_FEATURES + " and "
+					+ FeatureKernel.NUM_FEATURES);
+		}
+		
+		this.numFeatures = numFeatures;
+		this.matrix = new double[PieceCatalog.MAX_MOVES * numFeatures];
+	}
+	
+	//Simulates every legal move of the piece on the board (which is left unchanged) and fills one row per move.
+	public void fill(SimulationBoard board, int piece) {
+		numRows = PieceCatalog.numMoves(piece);
+		
+		for (int i = 0; i < numRows; i++) {
+			rewards[i] = board.makeMove(piece, PieceCatalog.moveOrient(piece, i), PieceCatalog.moveSlot(piece, i));
+			fillRow(board, i * numFeatures);
+			board.undo();
+		}
+	}
+	
+	private void fillRow(SimulationBoard board, int row) {
+		int[] top = board.getTop();
+		
+		for (int c = 0; c < State.COLS; c++) {
+			matrix[row + FeatureKernel.COL_HEIGHT + c] = top[c];
+		}
+		
+		for (int c = 0; c < State.COLS - 1; c++) {
+			matrix[row + FeatureKernel.ADJ_HEIGHT_DIFF + c] = board.getAdjHeightDiff(c);
+		}
+		
+		matrix[row + FeatureKernel.MAX_HEIGHT] = board.getMaxHeight();
+		matrix[row + FeatureKernel.HOLES] = board.getHoles();
+		
+		//The base features come from the board's running totals; only extended weight vectors need the kernel
+		if (numFeatures > BASE_FEATURES) {
+			FeatureKernel.extract(board, kernelFeatures);
+			
+			for (int f = BASE_FEATURES; f < numFeatures; f++) {
+				matrix[row + f] = kernelFeatures[f];
+			}
+		}
+	}
+	
+	//Scores every row filled by the last fill(...) as reward + features . weights, and returns the scores, indexed by
+	//move. Only the first getNumRows() entries are valid.
+	public double[] score(double[] weights) {
+		for (int i = 0; i < numRows; i++) {
+			int row = i * numFeatures;
+			double utility = 0;
+			
+			for (int f = 0; f < numFeatures; f++) {
+				utility += weights[f] * matrix[row + f];
+			}
+			
+			scores[i] = rewards[i] + utility;
+		}
+		
+		return scores;
+	}
+	
+	public int getNumRows() {
+		return numRows;
+	}
+	
+	//Index of the highest of the last scores, the lowest index on ties
+	public int bestMove() {
+		int best = 0;
+		
+		for (int i = 1; i < numRows; i++) {
+			if (scores[i] > scores[best]) {
+				best = i;
+			}
+		}
+		
+		return best;
+	}
+}
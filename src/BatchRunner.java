@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+//Headless entry point for playing many games on a compute box: plays a batch of seeded games greedily with the weights
+//in a file, in parallel on a GameScheduler, and prints a summary of the scores, with a progress line every ten seconds
+//while they run. Unlike PlayerSkeleton.main it writes no files, and it never touches AWT - java.awt.headless is set
+//before anything else runs, so that nothing in the batch can open a window by accident.
+//
+//Usage: BatchRunner [numGames] [firstSeed] [weightsFile] [replayFile]
+//Game g is played on seed firstSeed + g, so the same arguments always give the same scores. If a replay file is given,
+//every game is recorded to it (see ReplayWriter).
+public class BatchRunner {
+	
+    //================================================================================
+    // Constants
+    //================================================================================
+	
+	private static final int DEFAULT_NUM_GAMES = 100;
+	private static final long DEFAULT_FIRST_SEED = 3243;
+	private static final String DEFAULT_FILENAME_VECTOR = "weights.txt";
+	private static final long REPORT_INTERVAL_MILLIS = 10000; //Time between progress lines while the games run
+	
+    //================================================================================
+    // Fields
+    //================================================================================
+	
+	private final double[] weightVector;
+	private final GameScheduler scheduler = new GameScheduler();
+	private final ThreadLocal<SimulationBoard> boards = new ThreadLocal<SimulationBoard>() {
+		@Override
+		protected SimulationBoard initialValue() {
+			return new SimulationBoard();
+		}
+	};
+	private final ThreadLocal<BatchEvaluator> batches = new ThreadLocal<BatchEvaluator>() {
+		@Override
+		protected BatchEvaluator initialValue() {
+			return new BatchEvaluator(GreedyPolicy.NUM_WEIGHTS);
+		}
+	};
+	
+	private ReplayWriter replays = null; //Records every game if not null
+	
+	public BatchRunner(double[] weightVector) {
+		this.weightVector = weightVector;
+	}
+	
+	//Records every game played from now on to the given writer.
+	public void recordReplays(ReplayWriter replays) {
+		this.replays = replays;
+	}
+	
+    //================================================================================
+    // Games
+    //================================================================================
+	
+	//Plays the games firstSeed to firstSeed + numGames - 1 and returns their scores, indexed by game.
+	public int[] playGames(int numGames, final long firstSeed) {
+		return scheduler.playGames(numGames, new GamePlayer() {
+			@Override
+			public State play(int gameIndex) {
+				return playGame(firstSeed + gameIndex);
+			}
+		});
+	}
+	
+	//Plays one game with the greedy policy.
+	private State playGame(long seed) {
+		State s = new State(seed);
+		SimulationBoard board = boards.get();
+		BatchEvaluator batch = batches.get();
+		ReplayWriter.Game replay = replays == null ? null : new ReplayWriter.Game(seed);
+		
+		while (!s.hasLost()) {
+			int piece = s.getNextPiece();
+			int move = GreedyPolicy.pickMove(s, board, batch, weightVector);
+			
+			if (replay != null) {
+				replay.recordMove(piece, PieceCatalog.moveOrient(piece, move), PieceCatalog.moveSlot(piece, move));
+			}
+			
+			s.makeMove(move);
+		}
+		
+		if (replay != null) {
+			replay.setRowsCleared(s.getRowsCleared());
+			
+			try {
+				replays.write(replay);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		return s;
+	}
+	
+	public GameScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	//Every game played so far, as recorded by the scheduler
+	public RunMetrics getMetrics() {
+		return scheduler.getMetrics();
+	}
+	
+    //================================================================================
+    // Main
+    //================================================================================
+	
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		
+		int numGames = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_GAMES;
+		long firstSeed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_FIRST_SEED;
+		String fileName = args.length > 2 ? args[2] : DEFAULT_FILENAME_VECTOR;
+		
+		BatchRunner runner = new BatchRunner(GreedyPolicy.readWeights(fileName));
+		ReplayWriter replays = args.length > 3 ? new ReplayWriter(Paths.get(args[3])) : null;
+		runner.recordReplays(replays);
+		runner.getMetrics().startReporter(REPORT_INTERVAL_MILLIS, System.out);
+		int[] scores = runner.playGames(numGames, firstSeed);
+		runner.getScheduler().shutdown();
+		runner.getMetrics().stopReporter();
+		
+		if (replays != null) {
+			replays.close();
+		}
+		
+		long sum = 0;
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		
+		for (int score : scores) {
+			sum += score;
+			min = Math.min(min, score);
+			max = Math.max(max, score);
+		}
+		
+		System.out.printf("%d games on seeds %d to %d: average %.1f rows, min %d, max %d%n", numGames, firstSeed,
+				firstSeed + numGames - 1, (double) sum / numGames, min, max);
+		System.out.println(runner.getMetrics().summary());
+	}
+}
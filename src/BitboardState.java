@@ -0,0 +1,161 @@
+//A drop-in alternative to State that stores each row of the board as a COLS-bit mask instead of an int[][] of turn
+//numbers. A row is full when its mask equals FULL_ROW, and cleared rows are collapsed with a single array shift.
+//It keeps the same legalMoves()/makeMove(...)/getTop()/getRowsCleared()/hasLost() contract as State, but does not
+//record which turn placed each cell, and has no drawing support.
+public class BitboardState {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	public static final int FULL_ROW = (1 << State.COLS) - 1;
+
+    //================================================================================
+    // Fields
+    //================================================================================
+
+	private boolean lost = false;
+	private int turn = 0;
+	private int cleared = 0;
+
+	//bit c of rows[r] is set if the square at row r, column c is filled
+	private int[] rows = new int[State.ROWS];
+	//top row+1 of each column, 0 means empty
+	private int[] top = new int[State.COLS];
+
+	private int nextPiece;
+	private final PieceGenerator pieceGenerator;
+
+    //================================================================================
+    // Constructor
+    //================================================================================
+
+	public BitboardState() {
+		this(new SeededPieceGenerator());
+	}
+
+	//the same seed gives the same sequence of pieces as a State constructed with that seed
+	public BitboardState(long seed) {
+		this(new SeededPieceGenerator(seed));
+	}
+
+	public BitboardState(PieceGenerator pieceGenerator) {
+		this.pieceGenerator = pieceGenerator;
+		nextPiece = randomPiece();
+	}
+
+    //================================================================================
+    // Getters
+    //================================================================================
+
+	public int[] getRows() {
+		return rows;
+	}
+
+	public int[] getTop() {
+		return top;
+	}
+
+	public int getNextPiece() {
+		return nextPiece;
+	}
+
+	public boolean hasLost() {
+		return lost;
+	}
+
+	public int getRowsCleared() {
+		return cleared;
+	}
+
+	public int getTurnNumber() {
+		return turn;
+	}
+
+	//Expands the bitboard into the same int[][] layout as State.getField(). Filled squares are marked with 1, since
+	//the bitboard does not remember the turn on which each square was placed.
+	public int[][] getField() {
+		int[][] field = new int[State.ROWS][State.COLS];
+
+		for (int r = 0; r < State.ROWS; r++) {
+			for (int c = 0; c < State.COLS; c++) {
+				field[r][c] = (rows[r] >>> c) & 1;
+			}
+		}
+
+		return field;
+	}
+
+    //================================================================================
+    // Moves
+    //================================================================================
+
+	//random integer, returns 0-6
+	private int randomPiece() {
+		return pieceGenerator.nextPiece();
+	}
+
+	public int[][] legalMoves() {
+		return PieceCatalog.legalMoves(nextPiece);
+	}
+
+	//make a move based on the move index - its order in the legalMoves list
+	public void makeMove(int move) {
+		makeMove(PieceCatalog.moveOrient(nextPiece, move), PieceCatalog.moveSlot(nextPiece, move));
+	}
+
+	//make a move based on an array of orient and slot
+	public void makeMove(int[] move) {
+		makeMove(move[State.ORIENT], move[State.SLOT]);
+	}
+
+	//returns false if you lose - true otherwise
+	public boolean makeMove(int orient, int slot) {
+		turn++;
+		int o = PieceCatalog.orientIndex(nextPiece, orient);
+		int pieceHeight = PieceCatalog.height(o);
+
+		//height at which the piece makes contact
+		int height = PieceCatalog.landingHeight(top, o, slot);
+
+		//check if game ended
+		if (height + pieceHeight >= State.ROWS) {
+			lost = true;
+			return false;
+		}
+
+		//or in the piece one row at a time
+		for (int h = 0; h < pieceHeight; h++) {
+			rows[height+h] |= PieceCatalog.rowMask(o, slot, h);
+		}
+
+		//adjust top
+		PieceCatalog.updateTop(top, o, slot, height);
+
+		int rowsCleared = 0;
+
+		//check for full rows - starting at the top, so that shifting does not move an unchecked row
+		for (int r = height + pieceHeight - 1; r >= height; r--) {
+			if (rows[r] == FULL_ROW) {
+				rowsCleared++;
+				//slide everything above down by one row
+				System.arraycopy(rows, r+1, rows, r, State.ROWS-1-r);
+				rows[State.ROWS-1] = 0;
+			}
+		}
+
+		if (rowsCleared > 0) {
+			cleared += rowsCleared;
+			//every full row lay below the top of every column, so each top drops by at least rowsCleared
+			for (int c = 0; c < State.COLS; c++) {
+				top[c] -= rowsCleared;
+				while (top[c] >= 1 && ((rows[top[c]-1] >>> c) & 1) == 0) top[c]--;
+			}
+		}
+
+		//pick a new piece
+		nextPiece = randomPiece();
+
+		return true;
+	}
+}
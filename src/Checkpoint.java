@@ -0,0 +1,136 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+//The state of a tuning run, saved as a set of named values so that an interrupted run can carry on where it left off.
+//Doubles are written with Double.toString, which reads back as exactly the same value, so a resumed run continues as
+//if it had never stopped.
+//
+//Files are replaced atomically: the new contents are written to a temporary file next to the target, forced to disk
+//and renamed over the target, so a crash at any point leaves either the old file or the new one, never a mix.
+public class Checkpoint {
+	
+	private final Properties values = new Properties();
+	
+    //================================================================================
+    // Values
+    //================================================================================
+	
+	public void set(String key, String value) {
+		values.setProperty(key, value);
+	}
+	
+	public void set(String key, long value) {
+		set(key, Long.toString(value));
+	}
+	
+	public void set(String key, double value) {
+		set(key, Double.toString(value));
+	}
+	
+	public void set(String key, double[] value) {
+		StringBuilder sb = new StringBuilder();
+		
+		for (int i = 0; i < value.length; i++) {
+			sb.append(i == 0 ? "" : ",").append(value[i]);
+		}
+		
+		set(key, sb.toString());
+	}
+	
+	public String getString(String key) {
+		String value = values.getProperty(key);
+		
+		if (value == null) {
+			throw new IllegalStateException("Checkpoint has no value for " + key);
+		}
+		
+		return value;
+	}
+	
+	public long getLong(String key) {
+		return Long.parseLong(getString(key));
+	}
+	
+	public int getInt(String key) {
+		return Integer.parseInt(getString(key));
+	}
+	
+	public double getDouble(String key) {
+		return Double.parseDouble(getString(key));
+	}
+	
+	public double[] getDoubles(String key) {
+		String[] parts = getString(key).split(",");
+		double[] value = new double[parts.length];
+		
+		for (int i = 0; i < parts.length; i++) {
+			value[i] = Double.parseDouble(parts[i]);
+		}
+		
+		return value;
+	}
+	
+    //================================================================================
+    // File IO methods
+    //================================================================================
+	
+	//Reads the checkpoint from the given file, or returns null if there is none.
+	public static Checkpoint read(String fileName) throws IOException {
+		File f = new File(fileName);
+		
+		if (!f.exists()) {
+			return null;
+		}
+		
+		Checkpoint checkpoint = new Checkpoint();
+		InputStream in = new FileInputStream(f);
+		
+		try {
+			checkpoint.values.load(in);
+		} finally {
+			in.close();
+		}
+		
+		return checkpoint;
+	}
+	
+	public void write(String fileName) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		values.store(out, "Tuning checkpoint");
+		writeAtomically(fileName, out.toByteArray());
+	}
+	
+	public static void writeAtomically(String fileName, String contents) throws IOException {
+		writeAtomically(fileName, contents.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	//Replaces the file with the given contents, so that it is never seen half written, even after a crash.
+	public static void writeAtomically(String fileName, byte[] contents) throws IOException {
+		File target = new File(fileName).getAbsoluteFile();
+		File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		
+		try {
+			out.write(contents);
+			out.getChannel().force(true);
+		} finally {
+			out.close();
+		}
+		
+		try {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+//The cross-entropy method for tuning a weight vector. Every generation, a population of vectors is sampled from an
+//independent Gaussian per weight; once the population has been scored, the Gaussian is refitted to the elites (the
+//best scoring vectors), so the distribution moves towards better vectors and narrows as they agree.
+//
+//Refitting to the elites alone makes the variance collapse before the optimum is found, so a noise term is added to
+//every variance. It starts at the given noise and falls linearly to zero over noiseGenerations generations, as in
+//Szita and Lorincz's tuning of Tetris evaluators.
+//
+//The optimizer only samples and refits; scoring the population (in parallel, typically) is up to the caller. Its whole
+//state is the mean, the variances, the generation and the seed (each generation's population is drawn from a random
+//generator seeded by the seed and the generation), so it can be saved and restored exactly.
+public class CrossEntropyOptimizer {
+	
+    //================================================================================
+    // Fields
+    //================================================================================
+	
+	private final double[] mean;
+	private final double[] variance;
+	private final int populationSize;
+	private final int numElites;
+	private final double noise;
+	private final int noiseGenerations;
+	private final long seed;
+	private int generation;
+	
+    //================================================================================
+    // Constructor
+    //================================================================================
+	
+	//Starts from a Gaussian around the given mean with the same standard deviation for every weight. The same seed
+	//gives the same populations for the same scores.
+	public CrossEntropyOptimizer(double[] mean, double stdDev, int populationSize, int numElites, double noise,
+			int noiseGenerations, long seed) {
+		this(mean, uniformVariance(mean.length, stdDev), 0, populationSize, numElites, noise, noiseGenerations, seed);
+	}
+	
+	//Restores an optimizer from its state, as returned by getMean(), getVariance(), getGeneration() and getSeed().
+	public CrossEntropyOptimizer(double[] mean, double[] variance, int generation, int populationSize, int numElites,
+			double noise, int noiseGenerations, long seed) {
+		if (numElites < 1 || numElites > populationSize) {
+			throw new IllegalArgumentException("Number of elites must be between 1 and the population size");
+		}
+		
+		this.mean = mean.clone();
+		this.variance = variance.clone();
+		this.generation = generation;
+		this.populationSize = populationSize;
+		this.numElites = numElites;
+		this.noise = noise;
+		this.noiseGenerations = noiseGenerations;
+		this.seed = seed;
+	}
+	
+	private static double[] uniformVariance(int length, double stdDev) {
+		double[] variance = new double[length];
+		Arrays.fill(variance, stdDev * stdDev);
+		return variance;
+	}
+	
+    //================================================================================
+    // Getters
+    //================================================================================
+	
+	//Mean of the current distribution, the optimizer's best estimate of the optimal vector
+	public double[] getMean() {
+		return mean.clone();
+	}
+	
+	public double getStdDev(int index) {
+		return Math.sqrt(variance[index]);
+	}
+	
+	public double[] getVariance() {
+		return variance.clone();
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	public int getGeneration() {
+		return generation;
+	}
+	
+    //================================================================================
+    // Optimization
+    //================================================================================
+	
+	//Samples a population of vectors from the current distribution.
+	public double[][] samplePopulation() {
+		Random random = new Random(seed ^ generation * 0x9E3779B97F4A7C15L);
+		double[][] population = new double[populationSize][mean.length];
+		
+		for (int i = 0; i < populationSize; i++) {
+			for (int j = 0; j < mean.length; j++) {
+				population[i][j] = mean[j] + Math.sqrt(variance[j]) * random.nextGaussian();
+			}
+		}
+		
+		return population;
+	}
+	
+	//Refits the distribution to the numElites vectors of the population with the highest scores (scores[i] being the
+	//score of population[i]), and moves on to the next generation.
+	public void update(double[][] population, final double[] scores) {
+		Integer[] order = new Integer[population.length];
+		
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(scores[b], scores[a]);
+			}
+		});
+		
+		int elites = Math.min(numElites, population.length);
+		double extraVariance = noise * Math.max(0, 1 - (double) generation / noiseGenerations);
+		
+		for (int j = 0; j < mean.length; j++) {
+			double sum = 0;
+			
+			for (int e = 0; e < elites; e++) {
+				sum += population[order[e]][j];
+			}
+			
+			mean[j] = sum / elites;
+			double squares = 0;
+			
+			for (int e = 0; e < elites; e++) {
+				double d = population[order[e]][j] - mean[j];
+				squares += d * d;
+			}
+			
+			variance[j] = squares / elites + extraVariance;
+		}
+		
+		generation++;
+	}
+}
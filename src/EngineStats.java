@@ -0,0 +1,191 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+//Where the time of the game threads goes, published as the JMX MBean tetris:type=EngineStats so that it can be read
+//on a running tuning box with JConsole, VisualVM or jcmd, without a profiler. It counts the games started and running,
+//how long games wait for a worker, and, while sampling is on, times one turn in every SAMPLE_INTERVAL phase by phase:
+//loading the board, simulating the candidates, scoring them and making the move. It also shows the weight vector
+//being tuned and its score.
+//
+//Game threads only add to LongAdders. With sampling off - the default - a turn costs one field read, and a game two
+//counter increments and one System.nanoTime(); sampling can be turned on and off from the JMX client at any time.
+public class EngineStats implements EngineStatsMBean {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	public static final String OBJECT_NAME = "tetris:type=EngineStats";
+	public static final int SAMPLE_INTERVAL = 64; //Turns per sampled turn, a power of two
+
+	//Phases of a turn
+	public static final int COPY_FIELD = 0;
+	public static final int SIMULATE = 1;
+	public static final int EVALUATE = 2;
+	public static final int MAKE_MOVE = 3;
+	private static final String[] PHASE_NAMES = {"copy field", "simulate", "evaluate", "make move"};
+
+    //================================================================================
+    // Fields
+    //================================================================================
+
+	private final LongAdder gamesStarted = new LongAdder();
+	private final LongAdder gamesFinished = new LongAdder();
+	private final LongAdder queueNanos = new LongAdder();
+	private final LongAdder queuedGames = new LongAdder();
+	private final LongAdder sampledTurns = new LongAdder();
+	private final LongAdder[] phaseNanos = new LongAdder[PHASE_NAMES.length];
+
+	private volatile boolean sampling = false;
+	private volatile double[] bestWeights = new double[0];
+	private volatile double bestScore = 0;
+
+	public EngineStats() {
+		for (int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] = new LongAdder();
+		}
+	}
+
+	//Publishes the stats on the platform MBean server under OBJECT_NAME.
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+		}
+	}
+
+    //================================================================================
+    // Recording
+    //================================================================================
+
+	//Called by a worker as it starts a game that waited queueNanos for it.
+	public void gameStarted(long queueNanos) {
+		gamesStarted.increment();
+		this.queueNanos.add(queueNanos);
+		queuedGames.increment();
+	}
+
+	public void gameFinished() {
+		gamesFinished.increment();
+	}
+
+	//True if the given turn of a game should be timed phase by phase
+	public boolean isSampled(int turn) {
+		return sampling && (turn & (SAMPLE_INTERVAL - 1)) == 0;
+	}
+
+	//Records the phases of a sampled turn, from the System.nanoTime() at its start and at the end of every phase.
+	public void turnSampled(long start, long copied, long simulated, long evaluated, long moved) {
+		sampledTurns.increment();
+		phaseNanos[COPY_FIELD].add(copied - start);
+		phaseNanos[SIMULATE].add(simulated - copied);
+		phaseNanos[EVALUATE].add(evaluated - simulated);
+		phaseNanos[MAKE_MOVE].add(moved - evaluated);
+	}
+
+	public void setBest(double[] weights, double score) {
+		bestWeights = weights.clone();
+		bestScore = score;
+	}
+
+    //================================================================================
+    // MBean attributes
+    //================================================================================
+
+	@Override
+	public long getGamesStarted() {
+		return gamesStarted.sum();
+	}
+
+	@Override
+	public long getGamesInFlight() {
+		return gamesStarted.sum() - gamesFinished.sum();
+	}
+
+	@Override
+	public long getSampledTurns() {
+		return sampledTurns.sum();
+	}
+
+	@Override
+	public boolean isSampling() {
+		return sampling;
+	}
+
+	@Override
+	public void setSampling(boolean sampling) {
+		this.sampling = sampling;
+	}
+
+	@Override
+	public double getCopyFieldMicros() {
+		return phaseMicros(COPY_FIELD);
+	}
+
+	@Override
+	public double getSimulateMicros() {
+		return phaseMicros(SIMULATE);
+	}
+
+	@Override
+	public double getEvaluateMicros() {
+		return phaseMicros(EVALUATE);
+	}
+
+	@Override
+	public double getMakeMoveMicros() {
+		return phaseMicros(MAKE_MOVE);
+	}
+
+	private double phaseMicros(int phase) {
+		return phaseNanos[phase].sum() / 1e3 / Math.max(1, sampledTurns.sum());
+	}
+
+	@Override
+	public double getQueueWaitMillis() {
+		return queueNanos.sum() / 1e6 / Math.max(1, queuedGames.sum());
+	}
+
+	@Override
+	public String[] getPhaseBreakdown() {
+		long total = 0;
+
+		for (LongAdder nanos : phaseNanos) {
+			total += nanos.sum();
+		}
+
+		String[] lines = new String[PHASE_NAMES.length];
+
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = String.format("%-10s %5.1f%%  %8.2f us/turn", PHASE_NAMES[i],
+					100.0 * phaseNanos[i].sum() / Math.max(1, total), phaseMicros(i));
+		}
+
+		return lines;
+	}
+
+	@Override
+	public double[] getBestWeights() {
+		return bestWeights.clone();
+	}
+
+	@Override
+	public double getBestScore() {
+		return bestScore;
+	}
+
+	@Override
+	public void reset() {
+		queueNanos.reset();
+		queuedGames.reset();
+		sampledTurns.reset();
+
+		for (LongAdder nanos : phaseNanos) {
+			nanos.reset();
+		}
+	}
+}
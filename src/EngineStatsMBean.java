@@ -0,0 +1,43 @@
+//The management interface of EngineStats, as shown by JConsole, VisualVM or any other JMX client.
+public interface EngineStatsMBean {
+
+	//Games a worker has started
+	long getGamesStarted();
+
+	//Games running on a worker right now
+	long getGamesInFlight();
+
+	//Turns timed phase by phase since sampling was last turned on or reset
+	long getSampledTurns();
+
+	//True while one turn in every EngineStats.SAMPLE_INTERVAL is timed
+	boolean isSampling();
+
+	void setSampling(boolean sampling);
+
+	//Average microseconds per sampled turn spent loading the game's board into the scratch board
+	double getCopyFieldMicros();
+
+	//...simulating every candidate move and extracting the features of the boards they lead to
+	double getSimulateMicros();
+
+	//...scoring the candidates with the weights
+	double getEvaluateMicros();
+
+	//...making the chosen move with State.makeMove
+	double getMakeMoveMicros();
+
+	//Average milliseconds a game waits in the scheduler's queue before a worker starts it
+	double getQueueWaitMillis();
+
+	//The share of the sampled time each phase took, one line per phase
+	String[] getPhaseBreakdown();
+
+	//The weight vector being tuned, and its estimated average score
+	double[] getBestWeights();
+
+	double getBestScore();
+
+	//Clears the phase timings and queue waits
+	void reset();
+}
@@ -0,0 +1,65 @@
+import java.util.concurrent.atomic.LongAdder;
+
+//A bounded, lock-free cache from (board hash, weight-vector version) to the utility of that board. It is a fixed-size,
+//direct-mapped table: each key maps to exactly one slot and a new entry always replaces whatever was in its slot, so
+//memory use never grows and no eviction bookkeeping is needed.
+//
+//Entries are written without locks by many game threads at once. To detect a slot that was torn by two concurrent
+//writers, each slot stores (key XOR value bits) next to the value bits, and a lookup only hits if XORing them back
+//yields the key it asked for.
+public class EvaluationCache {
+	
+	private final long[] checks;
+	private final long[] values;
+	private final int mask;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	
+	//The capacity is rounded up to a power of two.
+	public EvaluationCache(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		checks = new long[size];
+		values = new long[size];
+		mask = size - 1;
+	}
+	
+	//Combines a board hash with the version of the weight vector used to evaluate it, so that entries computed with
+	//old weights are never returned after the weights change.
+	public static long key(long boardHash, int weightVersion) {
+		return boardHash ^ (weightVersion * 0x9E3779B97F4A7C15L);
+	}
+	
+	//Returns the cached utility for the key, or Double.NaN if it is not in the cache.
+	public double get(long key) {
+		int i = index(key);
+		long bits = values[i];
+		
+		if ((checks[i] ^ bits) == key) {
+			hits.increment();
+			return Double.longBitsToDouble(bits);
+		}
+		
+		misses.increment();
+		return Double.NaN;
+	}
+	
+	public void put(long key, double utility) {
+		int i = index(key);
+		long bits = Double.doubleToRawLongBits(utility);
+		values[i] = bits;
+		checks[i] = key ^ bits;
+	}
+	
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	private int index(long key) {
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+}
@@ -0,0 +1,194 @@
+import java.util.concurrent.LinkedBlockingQueue;
+
+//Streams games of weight vectors through a GameScheduler without batch barriers. Each game is a work item - a
+//candidate vector and a seed - that is submitted on its own and played by the next free worker, and finished items
+//are handed back through a queue in the order they end, so the caller can act on every score as soon as it arrives
+//and submit more work while the other games are still running.
+//
+//An item can be cancelled at any time, for instance once its candidate is known to lose, and it stops at its next
+//move, or is handed back without its player being called if no worker has reached it yet; it can also be given a
+//time limit, after which it stops by itself, so that a single very long game does not hold up the work that depends
+//on it. Every submitted item comes back through take() exactly once, whether it ended, was cancelled or ran out of
+//time.
+//
+//The pipeline is meant to be driven from a single thread, which submits items and takes them back.
+public class EvaluationPipeline {
+	
+	//Plays the game of a work item, stopping early once item.shouldStop() is true
+	public interface Player {
+		State play(WorkItem item);
+	}
+	
+	//A game of a candidate on a seed, and its result once it comes back
+	public static class WorkItem {
+		private final int candidate;
+		private final int game;
+		private final long seed;
+		private final long timeLimitNanos;
+		private final long submitTime = System.nanoTime();
+		private long startTime = 0;
+		private boolean started = false;
+		private volatile long deadline = Long.MAX_VALUE;
+		private volatile boolean cancelled = false;
+		private int score = 0;
+		private boolean lost = false;
+		private boolean timedOut = false;
+		private RuntimeException error = null;
+		
+		private WorkItem(int candidate, int game, long seed, long timeLimitNanos) {
+			this.candidate = candidate;
+			this.game = game;
+			this.seed = seed;
+			this.timeLimitNanos = timeLimitNanos;
+		}
+		
+		public int getCandidate() {
+			return candidate;
+		}
+		
+		//Index of the game among the games of its candidate
+		public int getGame() {
+			return game;
+		}
+		
+		public long getSeed() {
+			return seed;
+		}
+		
+		//Rows cleared, up to the point where the game ended or was stopped
+		public int getScore() {
+			return score;
+		}
+		
+		//True if the game was lost, false if it was stopped early
+		public boolean hasLost() {
+			return lost;
+		}
+		
+		//True if the game was stopped by its time limit rather than lost, cancelled or ended by its player
+		public boolean hasTimedOut() {
+			return timedOut;
+		}
+		
+		public boolean isCancelled() {
+			return cancelled;
+		}
+		
+		//Stops the game at its next move, or before it starts
+		public void cancel() {
+			cancelled = true;
+		}
+		
+		//True once the game should stop - it was cancelled, or its time limit has passed
+		public boolean shouldStop() {
+			return cancelled || System.nanoTime() - deadline > 0;
+		}
+		
+		//True if a worker started the game before it was cancelled. Items cancelled while still queued are handed
+		//back without playing a move.
+		public boolean wasStarted() {
+			return started;
+		}
+		
+		//Nanoseconds the game waited for a worker, once it has started
+		public long getQueueNanos() {
+			return startTime - submitTime;
+		}
+		
+		private void start() {
+			startTime = System.nanoTime();
+			started = true;
+			
+			if (timeLimitNanos != Long.MAX_VALUE) {
+				deadline = startTime + timeLimitNanos;
+			}
+		}
+	}
+	
+	private final GameScheduler scheduler;
+	private final Player player;
+	private final LinkedBlockingQueue<WorkItem> results = new LinkedBlockingQueue<>();
+	private int pending = 0; //Submitted items that have not been taken back yet
+	
+	public EvaluationPipeline(GameScheduler scheduler, Player player) {
+		this.scheduler = scheduler;
+		this.player = player;
+	}
+	
+	//Submits the game-th game of the candidate, on the given seed, and returns its work item. The game is stopped
+	//once it has run for timeLimitMillis, or never if that is Long.MAX_VALUE.
+	public WorkItem submit(int candidate, int game, long seed, long timeLimitMillis) {
+		final WorkItem item = new WorkItem(candidate, game, seed,
+				timeLimitMillis == Long.MAX_VALUE ? Long.MAX_VALUE : timeLimitMillis * 1000000);
+		pending++;
+		
+		scheduler.submitGame(game, new GamePlayer() {
+			@Override
+			public State play(int gameIndex) {
+				if (item.cancelled) {
+					return null; //Cancelled while queued: handed back without calling the player
+				}
+				
+				item.start();
+				State s = player.play(item);
+				return item.cancelled ? null : s; //A cancelled game's score is never used, nor counted
+			}
+		}, new GameListener() {
+			@Override
+			public void gameFinished(int gameIndex, State s) {
+				item.score = s.getRowsCleared();
+				item.lost = s.hasLost();
+				item.timedOut = !item.lost && !item.cancelled && System.nanoTime() - item.deadline > 0;
+				results.add(item);
+			}
+			
+			@Override
+			public void gameFailed(int gameIndex, RuntimeException e) {
+				item.error = e;
+				results.add(item);
+			}
+			
+			@Override
+			public void gameCancelled(int gameIndex) {
+				results.add(item);
+			}
+		});
+		
+		return item;
+	}
+	
+	//Waits for the next item to come back and returns it. Rethrows anything the item's game threw.
+	public WorkItem take() {
+		WorkItem item;
+		
+		try {
+			item = results.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a game", e);
+		}
+		
+		pending--;
+		
+		if (item.error != null) {
+			throw item.error;
+		}
+		
+		return item;
+	}
+	
+	public int getPending() {
+		return pending;
+	}
+	
+	//Cancels the given items and waits until every submitted item has come back, discarding them.
+	public void drain(Iterable<WorkItem> items) {
+		for (WorkItem item : items) {
+			item.cancel();
+		}
+		
+		while (pending > 0) {
+			take();
+		}
+	}
+}
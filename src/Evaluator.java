@@ -0,0 +1,10 @@
+//Scores a board position - the utility that a player assigns to the board after a simulated move.
+public interface Evaluator {
+	
+	double evaluate(SimulationBoard board);
+	
+	//Returns a value that is guaranteed to be at least the total reward (rows cleared) plus the final utility of any
+	//sequence of the given number of further placements on the board. Used by search to skip moves that cannot
+	//turn out best.
+	double upperBound(SimulationBoard board, int placements);
+}
@@ -0,0 +1,399 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//Lookahead move selection over the unknown pieces that follow the current one. The value of a move is its reward
+//(rows cleared) plus, at depth 1, the utility of the board it leaves; at greater depths, the average over all 7 pieces
+//that could come next of the best value of placing that piece, searched one ply less deep. Depth 1 is therefore the
+//same greedy choice PlayerSkeleton makes on its own, and depth 2 is a two-ply expectimax.
+//
+//In parallel mode, the candidate moves of the current piece - at every depth, including 1 - are searched on a
+//ForkJoinPool, each worker simulating on its own SimulationBoard, so nothing is allocated per simulated move. Ties are
+//always broken towards the lowest move index, so the parallel search picks the same move as the sequential one. When
+//many games are already running in parallel, the search should run sequentially on each game's own thread instead.
+//
+//The search deepens one ply at a time until it reaches the configured depth or runs out of its per-move time budget;
+//a depth that does not finish in time is thrown away and the best move of the deepest completed depth is returned.
+//Depth 1 is always completed.
+//
+//With pruning enabled, the candidates are searched in order of their depth-1 value, and a candidate is abandoned as
+//soon as Evaluator.upperBound(...) shows that it cannot beat the best value found so far - either before any of its
+//follow-ups are searched, or after some of the 7 next pieces have been averaged in. A candidate is only abandoned if
+//it is strictly worse, so the pruned search picks the same move as the exhaustive one.
+public class ExpectimaxSearch {
+	
+	//Value given to a candidate that was pruned - lower than that of any move that was searched
+	private static final double PRUNED = Double.NEGATIVE_INFINITY;
+	//Most depth-1 moves evaluated by one fork-join task - a single evaluation is too cheap to be worth a task
+	private static final int GREEDY_BATCH = 8;
+	
+	private final Evaluator evaluator;
+	private final ForkJoinPool pool;
+	private final int depth;
+	private final long timeBudgetNanos;
+	private final boolean prune;
+	private final boolean parallel;
+	
+	private final LongAdder nodes = new LongAdder(); //Number of moves simulated so far
+	
+	//Scratch board of each thread that runs part of the search
+	private final ThreadLocal<SimulationBoard> scratch = new ThreadLocal<SimulationBoard>() {
+		@Override
+		protected SimulationBoard initialValue() {
+			return new SimulationBoard();
+		}
+	};
+	
+	//A pruned search, in parallel on the given pool
+	public ExpectimaxSearch(Evaluator evaluator, ForkJoinPool pool, int depth, long timeBudgetMillis) {
+		this(evaluator, pool, depth, timeBudgetMillis, true, true);
+	}
+	
+	//The pool is only used in parallel mode, and may be null otherwise.
+	public ExpectimaxSearch(Evaluator evaluator, ForkJoinPool pool, int depth, long timeBudgetMillis, boolean prune,
+			boolean parallel) {
+		if (depth < 1 || depth > SimulationBoard.MAX_DEPTH) {
+			throw new IllegalArgumentException("Search depth must be between 1 and " + SimulationBoard.MAX_DEPTH);
+		}
+		
+		this.evaluator = evaluator;
+		this.pool = pool;
+		this.depth = depth;
+		this.timeBudgetNanos = timeBudgetMillis * 1000000L;
+		this.prune = prune;
+		this.parallel = parallel;
+	}
+	
+	public int getDepth() {
+		return depth;
+	}
+	
+	//Returns the number of moves simulated by all searches so far, to measure the effect of pruning.
+	public long getNodeCount() {
+		return nodes.sum();
+	}
+	
+	//Returns the index (into State.legalMoves()) of the best move for the given piece on the given board.
+	public int pickMove(int[][] field, int[] top, int piece) {
+		return pickMove(evaluator, field, top, piece);
+	}
+	
+	//Like pickMove(field, top, piece), but scores the boards with the given evaluator instead of the search's own, so
+	//that one search can play games of different weight vectors at the same time.
+	public int pickMove(Evaluator evaluator, int[][] field, int[] top, int piece) {
+		long deadline = System.nanoTime() + timeBudgetNanos;
+		double[] greedyValues = searchGreedy(evaluator, field, top, piece);
+		int bestMove = bestMove(greedyValues);
+		int[] order = prune ? orderMoves(greedyValues) : null;
+		
+		for (int d = 2; d <= depth; d++) {
+			double[] values = prune ? searchPruned(evaluator, field, top, piece, d, deadline, order)
+					: searchExhaustive(evaluator, field, top, piece, d, deadline);
+			
+			if (values == null) {
+				break; //Out of time - keep the move from the last completed depth
+			}
+			
+			bestMove = bestMove(values);
+		}
+		
+		return bestMove;
+	}
+	
+	//Values of every move searched to depth 1. In parallel mode the moves are split into ranges of at most
+	//GREEDY_BATCH moves, each evaluated by one fork-join task.
+	private double[] searchGreedy(final Evaluator evaluator, final int[][] field, final int[] top, final int piece) {
+		final double[] values = new double[PieceCatalog.numMoves(piece)];
+		
+		if (!parallel) {
+			evaluateGreedy(evaluator, field, top, piece, values, 0, values.length);
+			return values;
+		}
+		
+		pool.invoke(new GreedyTask(evaluator, field, top, piece, values, 0, values.length));
+		return values;
+	}
+	
+	private class GreedyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Evaluator evaluator;
+		private final int[][] field;
+		private final int[] top;
+		private final int piece;
+		private final double[] values;
+		private final int from;
+		private final int to;
+		
+		GreedyTask(Evaluator evaluator, int[][] field, int[] top, int piece, double[] values, int from, int to) {
+			this.evaluator = evaluator;
+			this.field = field;
+			this.top = top;
+			this.piece = piece;
+			this.values = values;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= GREEDY_BATCH) {
+				evaluateGreedy(evaluator, field, top, piece, values, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new GreedyTask(evaluator, field, top, piece, values, from, mid),
+						new GreedyTask(evaluator, field, top, piece, values, mid, to));
+			}
+		}
+	}
+	
+	//Fills values[from..to) with the depth-1 values of those moves, on the calling thread's scratch board.
+	private void evaluateGreedy(Evaluator evaluator, int[][] field, int[] top, int piece, double[] values, int from,
+			int to) {
+		SimulationBoard board = scratch.get();
+		board.load(field, top);
+		
+		for (int i = from; i < to; i++) {
+			values[i] = moveValue(evaluator, board, piece, i, 1, Long.MAX_VALUE);
+		}
+	}
+	
+	//Values of every move searched to the given depth, one task per move. Returns null if the deadline passed before
+	//every move was searched.
+	private double[] searchExhaustive(final Evaluator evaluator, final int[][] field, final int[] top, final int piece,
+			final int d, final long deadline) {
+		final double[] values = new double[PieceCatalog.numMoves(piece)];
+		final List<RecursiveAction> tasks = new ArrayList<>(values.length);
+		
+		for (int i = 0; i < values.length; i++) {
+			final int move = i;
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected void compute() {
+					SimulationBoard board = scratch.get();
+					board.load(field, top);
+					values[move] = moveValue(evaluator, board, piece, move, d, deadline);
+				}
+			});
+		}
+		
+		runAll(tasks);
+		
+		for (int i = 0; i < values.length; i++) {
+			if (Double.isNaN(values[i])) {
+				return null;
+			}
+		}
+		
+		return values;
+	}
+	
+	//Like searchExhaustive, but the candidates are searched best-first in the given order and pruned against the best
+	//value found so far. The first candidate is searched on the calling thread to set that value, and the rest as
+	//tasks. Pruned candidates get the value PRUNED.
+	private double[] searchPruned(final Evaluator evaluator, final int[][] field, final int[] top, final int piece,
+			final int d, final long deadline, int[] order) {
+		final double[] values = new double[PieceCatalog.numMoves(piece)];
+		final AtomicLong alpha = new AtomicLong(Double.doubleToLongBits(-Double.MAX_VALUE));
+		final List<RecursiveAction> tasks = new ArrayList<>(values.length);
+		
+		SimulationBoard board = scratch.get();
+		board.load(field, top);
+		values[order[0]] = boundedMoveValue(evaluator, board, piece, order[0], d, deadline, alpha);
+		
+		for (int i = 1; i < order.length; i++) {
+			final int move = order[i];
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected void compute() {
+					SimulationBoard board = scratch.get();
+					board.load(field, top);
+					values[move] = boundedMoveValue(evaluator, board, piece, move, d, deadline, alpha);
+				}
+			});
+		}
+		
+		runAll(tasks);
+		
+		for (int i = 0; i < values.length; i++) {
+			if (Double.isNaN(values[i])) {
+				return null;
+			}
+		}
+		
+		return values;
+	}
+	
+	//Like moveValue, but returns PRUNED as soon as the move is shown to be strictly worse than alpha, the best value
+	//found so far, and raises alpha if the move turns out better.
+	private double boundedMoveValue(Evaluator evaluator, SimulationBoard board, int piece, int move, int d,
+			long deadline, AtomicLong alpha) {
+		nodes.increment();
+		double reward = board.makeMove(piece, PieceCatalog.moveOrient(piece, move), PieceCatalog.moveSlot(piece, move));
+		
+		if (reward == Integer.MIN_VALUE) {
+			double value = reward + evaluator.evaluate(board);
+			board.undo();
+			return value;
+		}
+		
+		double bound = evaluator.upperBound(board, d - 1);
+		double sum = 0;
+		
+		for (int next = 0; next < State.N_PIECES; next++) {
+			//Each next piece not yet searched contributes at most bound to the average
+			if (reward + (sum + (State.N_PIECES - next) * bound) / State.N_PIECES < get(alpha)) {
+				board.undo();
+				return PRUNED;
+			}
+			
+			if (System.nanoTime() > deadline) {
+				board.undo();
+				return Double.NaN;
+			}
+			
+			double best = -Double.MAX_VALUE;
+			
+			for (int m = 0; m < PieceCatalog.numMoves(next); m++) {
+				double value = moveValue(evaluator, board, next, m, d - 1, deadline);
+				
+				if (Double.isNaN(value)) {
+					board.undo();
+					return Double.NaN;
+				}
+				
+				best = Math.max(best, value);
+			}
+			
+			sum += best;
+		}
+		
+		double value = reward + sum / State.N_PIECES;
+		board.undo();
+		raise(alpha, value);
+		
+		return value;
+	}
+	
+	//Reward plus the value of the resulting board, searched d plies deep in total. NaN if the deadline passed.
+	private double moveValue(Evaluator evaluator, SimulationBoard board, int piece, int move, int d, long deadline) {
+		nodes.increment();
+		double reward = board.makeMove(piece, PieceCatalog.moveOrient(piece, move), PieceCatalog.moveSlot(piece, move));
+		double value;
+		
+		if (d == 1 || reward == Integer.MIN_VALUE) {
+			value = reward + evaluator.evaluate(board);
+		} else {
+			value = reward + expectedValue(evaluator, board, d - 1, deadline);
+		}
+		
+		board.undo();
+		return value;
+	}
+	
+	//Average over every possible next piece of the value of its best move, searched d plies deep. NaN if the
+	//deadline passed.
+	private double expectedValue(Evaluator evaluator, SimulationBoard board, int d, long deadline) {
+		double sum = 0;
+		
+		for (int piece = 0; piece < State.N_PIECES; piece++) {
+			if (System.nanoTime() > deadline) {
+				return Double.NaN;
+			}
+			
+			double best = -Double.MAX_VALUE;
+			
+			for (int move = 0; move < PieceCatalog.numMoves(piece); move++) {
+				double value = moveValue(evaluator, board, piece, move, d, deadline);
+				
+				if (Double.isNaN(value)) {
+					return Double.NaN;
+				}
+				
+				best = Math.max(best, value);
+			}
+			
+			sum += best;
+		}
+		
+		return sum / State.N_PIECES;
+	}
+	
+	//Runs the tasks on the pool in parallel mode, otherwise one after another on the calling thread.
+	private void runAll(final List<RecursiveAction> tasks) {
+		if (!parallel) {
+			for (RecursiveAction task : tasks) {
+				task.invoke();
+			}
+			
+			return;
+		}
+		
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+	
+	private static double get(AtomicLong alpha) {
+		return Double.longBitsToDouble(alpha.get());
+	}
+	
+	private static void raise(AtomicLong alpha, double value) {
+		long current = alpha.get();
+		
+		while (value > Double.longBitsToDouble(current) && !alpha.compareAndSet(current, Double.doubleToLongBits(value))) {
+			current = alpha.get();
+		}
+	}
+	
+	//Move indices sorted by decreasing value, lower indices first on ties
+	private static int[] orderMoves(final double[] values) {
+		Integer[] order = new Integer[values.length];
+		
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(values[b], values[a]);
+			}
+		});
+		
+		int[] result = new int[order.length];
+		
+		for (int i = 0; i < order.length; i++) {
+			result[i] = order[i];
+		}
+		
+		return result;
+	}
+	
+	//Index of the highest value, the lowest index on ties
+	private static int bestMove(double[] values) {
+		int best = 0;
+		
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] > values[best]) {
+				best = i;
+			}
+		}
+		
+		return best;
+	}
+}
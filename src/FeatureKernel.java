@@ -0,0 +1,95 @@
+//Computes board features from a column-major bit representation of the board: bit r of cols[c] is set if the square
+//at row r, column c is filled (see State.getColumns() and SimulationBoard.getColumns()). Every feature is computed
+//with shifts, masks and Integer.bitCount over whole columns, without visiting individual squares.
+//
+//Besides the 21 features of PlayerSkeleton.calculateUtility, it computes the standard Dellacherie features (landing
+//height, eroded piece cells, row and column transitions, holes, cumulative wells) and the number of rows with holes.
+public final class FeatureKernel {
+
+    //================================================================================
+    // Feature indices
+    //================================================================================
+
+	//0 to COLS - 1: height of each column
+	public static final int COL_HEIGHT = 0;
+	//COLS to 2 * COLS - 2: absolute difference between the heights of columns c and c + 1
+	public static final int ADJ_HEIGHT_DIFF = State.COLS;
+	public static final int MAX_HEIGHT = 2 * State.COLS - 1;
+	public static final int HOLES = 2 * State.COLS;
+	//Row transitions - filled/empty changes along each row, with the walls counted as filled
+	public static final int ROW_TRANSITIONS = HOLES + 1;
+	//Column transitions - filled/empty changes up each column, with the floor counted as filled
+	public static final int COL_TRANSITIONS = HOLES + 2;
+	//Sum over every well (open empty squares with filled squares or walls on both sides) of 1 + 2 + ... + depth
+	public static final int CUMULATIVE_WELLS = HOLES + 3;
+	public static final int ROWS_WITH_HOLES = HOLES + 4;
+	//The number of features that depend only on the board
+	public static final int NUM_BOARD_FEATURES = HOLES + 5;
+	//Height of the middle of the last piece placed, in half rows (see SimulationBoard.getLastLandingHeight)
+	public static final int LANDING_HEIGHT = NUM_BOARD_FEATURES;
+	//Rows cleared by the last piece times the number of its own squares in those rows
+	public static final int ERODED_CELLS = NUM_BOARD_FEATURES + 1;
+	public static final int NUM_FEATURES = NUM_BOARD_FEATURES + 2;
+
+	private static final int ALL_ROWS = (1 << State.ROWS) - 1;
+
+	private FeatureKernel() {
+	}
+
+    //================================================================================
+    // Kernel
+    //================================================================================
+
+	//Fills features[0 .. NUM_BOARD_FEATURES) for the board with the given columns and tops.
+	public static void extract(int[] cols, int[] top, int[] features) {
+		int maxHeight = 0;
+		int holes = 0;
+		int holeRows = 0;
+		int colTransitions = 0;
+		int rowTransitions = Integer.bitCount(~cols[0] & ALL_ROWS) + Integer.bitCount(~cols[State.COLS-1] & ALL_ROWS);
+		int wells = 0;
+
+		for (int c = 0; c < State.COLS; c++) {
+			int col = cols[c];
+			int belowTop = (1 << top[c]) - 1;
+			int holeMask = ~col & belowTop;
+
+			features[COL_HEIGHT + c] = top[c];
+			maxHeight = Math.max(maxHeight, top[c]);
+			holes += Integer.bitCount(holeMask);
+			holeRows |= holeMask;
+			colTransitions += Integer.bitCount((col ^ ((col << 1) | 1)) & ALL_ROWS);
+
+			if (c < State.COLS - 1) {
+				features[ADJ_HEIGHT_DIFF + c] = Math.abs(top[c] - top[c+1]);
+				rowTransitions += Integer.bitCount((col ^ cols[c+1]) & ALL_ROWS);
+			}
+
+			//Open empty squares whose neighbours on both sides are filled (or a wall)
+			int left = c == 0 ? ALL_ROWS : cols[c-1];
+			int right = c == State.COLS - 1 ? ALL_ROWS : cols[c+1];
+			int well = ~col & left & right & ALL_ROWS & ~belowTop;
+
+			//Each pass counts every well square that still has as many well squares below it as passes made, so a
+			//well of depth d contributes d + (d - 1) + ... + 1
+			while (well != 0) {
+				wells += Integer.bitCount(well);
+				well &= well >>> 1;
+			}
+		}
+
+		features[MAX_HEIGHT] = maxHeight;
+		features[HOLES] = holes;
+		features[ROW_TRANSITIONS] = rowTransitions;
+		features[COL_TRANSITIONS] = colTransitions;
+		features[CUMULATIVE_WELLS] = wells;
+		features[ROWS_WITH_HOLES] = Integer.bitCount(holeRows);
+	}
+
+	//Fills all NUM_FEATURES features for a simulated board, including those of the last move made on it.
+	public static void extract(SimulationBoard board, int[] features) {
+		extract(board.getColumns(), board.getTop(), features);
+		features[LANDING_HEIGHT] = board.getLastLandingHeight();
+		features[ERODED_CELLS] = board.getLastErodedCells();
+	}
+}
@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//A Java Flight Recorder event covering one game, from the moment a worker starts it to the moment it ends, so a
+//recording shows when every game started, how long it ran and how it ended. It is only written while a recording with
+//the event enabled is running (java -XX:StartFlightRecording or jcmd <pid> JFR.start); otherwise begin() and
+//shouldCommit() are all it costs.
+@Name("tetris.Game")
+@Label("Game")
+@Category("Tetris")
+@Description("A game played by a worker, from its first move to its last")
+@StackTrace(false)
+public class GameEvent extends jdk.jfr.Event {
+
+	@Label("Seed")
+	long seed;
+
+	@Label("Moves")
+	int moves;
+
+	@Label("Rows Cleared")
+	int rowsCleared;
+
+	@Label("Lost")
+	@Description("False if the game was stopped before it was lost")
+	boolean lost;
+
+	//Fills in the result of the game and commits the event, if it is being recorded.
+	public void end(State s) {
+		if (shouldCommit()) {
+			moves = s.getTurnNumber();
+			rowsCleared = s.getRowsCleared();
+			lost = s.hasLost();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,12 @@
+//Receives the games a GameScheduler plays asynchronously (see GameScheduler.submitGame) as they end.
+public interface GameListener {
+	
+	//Called on the worker that played game number gameIndex, with its final state, as soon as the game ends.
+	void gameFinished(int gameIndex, State s);
+	
+	//Called instead if playing game number gameIndex threw an exception.
+	void gameFailed(int gameIndex, RuntimeException e);
+	
+	//Called instead if game number gameIndex was cancelled, i.e. its player returned null.
+	void gameCancelled(int gameIndex);
+}
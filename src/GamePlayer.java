@@ -0,0 +1,7 @@
+//Plays one complete game for a GameScheduler.
+public interface GamePlayer {
+	
+	//Plays game number gameIndex (0 to the number of games - 1 of the batch) to the end, and returns its final state.
+	//A game submitted on its own (see GameScheduler.submitGame) may instead return null if it was cancelled.
+	State play(int gameIndex);
+}
@@ -0,0 +1,265 @@
+import java.util.Arrays;
+
+//Plays many independent games in lockstep, with every game's state kept in flat primitive arrays (structure of
+//arrays) rather than one State object per game. Each step first picks the greedy move of every game in flight, scoring
+//every candidate of every game against the same weights, and then applies all the chosen moves. Games that end are
+//compacted out and their slots refilled with new games until every requested game has been played.
+//
+//A game is stored as its column bitmasks (bit r of a column is set if row r is filled) and column tops, and pieces are
+//drawn exactly as SeededPieceGenerator draws them, so a game in the pool plays the same moves and scores the same as
+//PlayerSkeleton playing State(seed) greedily with the same weights, which check/GamePoolCheck verifies. The pool is
+//single-threaded; run one pool per thread to use more cores.
+//
+//Only Benchmark plays through the pool, to measure the structure-of-arrays layout against State. The tuning races do
+//not: they need what the pool does not offer - game budgets, cancelling a game once its vector is eliminated,
+//replays, the search and per-phase timing - so they play State games through EvaluationPipeline.
+public class GamePool {
+	
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final int NUM_FEATURES = FeatureKernel.HOLES + 1;
+	
+	private final double[] weights;
+	private final int width;
+	
+	//Per slot - [slot] or [slot * COLS + column]
+	private final int[] cols;
+	private final int[] tops;
+	private final long[] rng; //SplittableRandom seed of each game
+	private final int[] piece;
+	private final int[] cleared;
+	private final int[] gameIndex;
+	private final int[] bestMove;
+	private final boolean[] lost;
+	private int active = 0;
+	
+	//Scratch columns for scoring a candidate
+	private final int[] scratch = new int[State.COLS];
+	private long movesPlayed = 0;
+	
+	//width is the number of games kept in flight at once
+	public GamePool(int width, double[] weights) {
+		if (weights.length < NUM_FEATURES) {
+			throw new IllegalArgumentException("Expected " + NUM_FEATURES + " weights");
+		}
+		
+		this.weights = weights.clone();
+		this.width = width;
+		cols = new int[width * State.COLS];
+		tops = new int[width * State.COLS];
+		rng = new long[width];
+		piece = new int[width];
+		cleared = new int[width];
+		gameIndex = new int[width];
+		bestMove = new int[width];
+		lost = new boolean[width];
+	}
+	
+	public long getMovesPlayed() {
+		return movesPlayed;
+	}
+	
+	//Plays one game per seed and returns the scores (rows cleared), indexed like the seeds.
+	public int[] play(long[] seeds) {
+		int[] scores = new int[seeds.length];
+		int nextGame = 0;
+		active = 0;
+		
+		while (active < width && nextGame < seeds.length) {
+			startGame(active++, nextGame, seeds[nextGame]);
+			nextGame++;
+		}
+		
+		while (active > 0) {
+			for (int i = 0; i < active; i++) {
+				bestMove[i] = pickMove(i);
+			}
+			
+			for (int i = 0; i < active; i++) {
+				lost[i] = !makeMove(i, bestMove[i]);
+			}
+			
+			movesPlayed += active;
+			
+			for (int i = 0; i < active; i++) {
+				while (i < active && lost[i]) {
+					scores[gameIndex[i]] = cleared[i];
+					
+					if (nextGame < seeds.length) {
+						startGame(i, nextGame, seeds[nextGame]);
+						nextGame++;
+					} else {
+						moveSlot(--active, i);
+					}
+				}
+			}
+		}
+		
+		return scores;
+	}
+	
+    //================================================================================
+    // Slots
+    //================================================================================
+	
+	private void startGame(int slot, int game, long seed) {
+		Arrays.fill(cols, slot * State.COLS, (slot + 1) * State.COLS, 0);
+		Arrays.fill(tops, slot * State.COLS, (slot + 1) * State.COLS, 0);
+		rng[slot] = seed;
+		cleared[slot] = 0;
+		gameIndex[slot] = game;
+		lost[slot] = false;
+		piece[slot] = nextPiece(slot);
+	}
+	
+	private void moveSlot(int from, int to) {
+		System.arraycopy(cols, from * State.COLS, cols, to * State.COLS, State.COLS);
+		System.arraycopy(tops, from * State.COLS, tops, to * State.COLS, State.COLS);
+		rng[to] = rng[from];
+		piece[to] = piece[from];
+		cleared[to] = cleared[from];
+		gameIndex[to] = gameIndex[from];
+		lost[to] = lost[from];
+	}
+	
+	//Same sequence as SplittableRandom.nextInt(N_PIECES), inlined so that each game's generator is a single long
+	private int nextPiece(int slot) {
+		int bound = State.N_PIECES;
+		int r = mix32(rng[slot] += GOLDEN_GAMMA);
+		
+		for (int u = r >>> 1; u + (bound - 1) - (r = u % bound) < 0; u = mix32(rng[slot] += GOLDEN_GAMMA) >>> 1);
+		
+		return r;
+	}
+	
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+	
+    //================================================================================
+    // Moves
+    //================================================================================
+	
+	//The legal move with the highest reward + utility, the lowest index on ties
+	private int pickMove(int slot) {
+		int p = piece[slot];
+		int optimalMove = 0;
+		double maxEvaluation = -Double.MAX_VALUE;
+		
+		for (int m = 0; m < PieceCatalog.numMoves(p); m++) {
+			double evaluation = evaluateMove(slot, p, m);
+			
+			if (evaluation > maxEvaluation) {
+				maxEvaluation = evaluation;
+				optimalMove = m;
+			}
+		}
+		
+		return optimalMove;
+	}
+	
+	//Places the piece on a scratch copy of the game's columns and returns rows cleared + utility of the result, or
+	//Integer.MIN_VALUE + utility of the current board if the move loses.
+	private double evaluateMove(int slot, int p, int move) {
+		int base = slot * State.COLS;
+		System.arraycopy(cols, base, scratch, 0, State.COLS);
+		int rowsCleared = place(scratch, tops, base, PieceCatalog.moveOrientIndex(p, move), PieceCatalog.moveSlot(p, move));
+		
+		if (rowsCleared < 0) {
+			System.arraycopy(cols, base, scratch, 0, State.COLS);
+			return (double) Integer.MIN_VALUE + utility(scratch);
+		}
+		
+		return rowsCleared + utility(scratch);
+	}
+	
+	//Returns false if the move loses, which ends the game
+	private boolean makeMove(int slot, int move) {
+		int base = slot * State.COLS;
+		int p = piece[slot];
+		System.arraycopy(cols, base, scratch, 0, State.COLS);
+		int rowsCleared = place(scratch, tops, base, PieceCatalog.moveOrientIndex(p, move), PieceCatalog.moveSlot(p, move));
+		
+		if (rowsCleared < 0) {
+			return false;
+		}
+		
+		System.arraycopy(scratch, 0, cols, base, State.COLS);
+		
+		for (int c = 0; c < State.COLS; c++) {
+			tops[base + c] = 32 - Integer.numberOfLeadingZeros(scratch[c]);
+		}
+		
+		cleared[slot] += rowsCleared;
+		piece[slot] = nextPiece(slot);
+		
+		return true;
+	}
+	
+	//Drops the piece into the columns (whose tops are top[base .. base + COLS)) and removes the rows it completes.
+	//Returns the number of rows cleared, or -1 if the move loses, in which case the columns are left part-written.
+	private static int place(int[] columns, int[] top, int base, int o, int slot) {
+		int pieceWidth = PieceCatalog.width(o);
+		int height = 0;
+		
+		for (int c = 0; c < pieceWidth; c++) {
+			height = Math.max(height, top[base + slot + c] - PieceCatalog.bottom(o, c));
+		}
+		
+		if (height + PieceCatalog.height(o) >= State.ROWS) {
+			return -1;
+		}
+		
+		for (int c = 0; c < pieceWidth; c++) {
+			columns[slot + c] |= ((1 << PieceCatalog.top(o, c)) - (1 << PieceCatalog.bottom(o, c))) << height;
+		}
+		
+		//A row is full if its bit is set in every column
+		int full = (1 << State.ROWS) - 1;
+		
+		for (int c = 0; c < State.COLS; c++) {
+			full &= columns[c];
+		}
+		
+		int rowsCleared = Integer.bitCount(full);
+		
+		//Remove the full rows from the highest down, so that the lower ones stay in place
+		while (full != 0) {
+			int r = 31 - Integer.numberOfLeadingZeros(full);
+			int below = (1 << r) - 1;
+			
+			for (int c = 0; c < State.COLS; c++) {
+				columns[c] = (columns[c] & below) | ((columns[c] >>> 1) & ~below);
+			}
+			
+			full &= below;
+		}
+		
+		return rowsCleared;
+	}
+	
+	//The weighted sum of the 21 features of PlayerSkeleton.calculateUtility, summed in the same order
+	private double utility(int[] columns) {
+		double utility = 0;
+		int maxHeight = 0;
+		int holes = 0;
+		
+		for (int c = 0; c < State.COLS; c++) {
+			int top = 32 - Integer.numberOfLeadingZeros(columns[c]);
+			utility += weights[FeatureKernel.COL_HEIGHT + c] * top;
+			maxHeight = Math.max(maxHeight, top);
+			holes += Integer.bitCount(~columns[c] & ((1 << top) - 1));
+		}
+		
+		for (int c = 0; c < State.COLS - 1; c++) {
+			int diff = Math.abs((32 - Integer.numberOfLeadingZeros(columns[c]))
+					- (32 - Integer.numberOfLeadingZeros(columns[c+1])));
+			utility += weights[FeatureKernel.ADJ_HEIGHT_DIFF + c] * diff;
+		}
+		
+		utility += weights[FeatureKernel.MAX_HEIGHT] * maxHeight;
+		utility += weights[FeatureKernel.HOLES] * holes;
+		
+		return utility;
+	}
+}
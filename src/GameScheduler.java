@@ -0,0 +1,116 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+//Plays batches of games on a fixed-size, work-stealing ForkJoinPool with one worker per core. Workers are reused for
+//every batch, so there is no thread churn between batches, and whichever workers finish early steal the remaining
+//games of the batch. Scores are written into a result array by game index as each game finishes, so no game waits on
+//any other but the batch as a whole.
+//
+//Single games can also be submitted on their own with submitGame(...), which returns at once and reports the game
+//to a listener when it ends, so that a caller can keep the workers busy without waiting for whole batches.
+//
+//Every game the scheduler plays is recorded in its RunMetrics, the one count of games, moves and throughput.
+public class GameScheduler {
+	
+	private final ForkJoinPool pool;
+	private final RunMetrics metrics = new RunMetrics();
+	
+	public GameScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public GameScheduler(int numThreads) {
+		pool = new ForkJoinPool(numThreads);
+	}
+	
+	//Plays the games 0 to numGames - 1 in parallel and returns their scores (rows cleared), indexed by game.
+	public int[] playGames(final int numGames, final GamePlayer player) {
+		final int[] scores = new int[numGames];
+		pool.invoke(new GameTask(player, scores, 0, numGames));
+		
+		return scores;
+	}
+	
+	//Plays game number gameIndex on the next free worker, and passes its final state to the listener once it ends. 
+	//Returns immediately. A game whose player returns null was cancelled: it is not recorded in the metrics, so that
+	//they only count games that were lost or stopped at a budget.
+	public void submitGame(final int gameIndex, final GamePlayer player, final GameListener listener) {
+		pool.execute(new Runnable() {
+			@Override
+			public void run() {
+				State s;
+				
+				try {
+					s = player.play(gameIndex);
+				} catch (RuntimeException e) {
+					listener.gameFailed(gameIndex, e);
+					return;
+				}
+				
+				if (s == null) {
+					listener.gameCancelled(gameIndex);
+					return;
+				}
+				
+				metrics.gameFinished(s);
+				listener.gameFinished(gameIndex, s);
+			}
+		});
+	}
+	
+	//Plays the games in [from, to), splitting the range in two until only one game is left, so that idle workers can
+	//steal half of the remaining games.
+	private class GameTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final GamePlayer player;
+		private final int[] scores;
+		private final int from;
+		private final int to;
+		
+		GameTask(GamePlayer player, int[] scores, int from, int to) {
+			this.player = player;
+			this.scores = scores;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				State s = player.play(from);
+				scores[from] = s.getRowsCleared();
+				metrics.gameFinished(s);
+			} else if (to > from) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new GameTask(player, scores, from, mid), new GameTask(player, scores, mid, to));
+			}
+		}
+	}
+	
+    //================================================================================
+    // Getters
+    //================================================================================
+	
+	//The games played so far, their moves, rows and scores, and the throughput since the scheduler was created
+	public RunMetrics getMetrics() {
+		return metrics;
+	}
+	
+	//The workers, for parallel work that runs while no games do, such as the search of a single game
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+	
+	//Stops accepting games and waits for the ones in progress to finish.
+	public void shutdown() {
+		pool.shutdown();
+		
+		try {
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
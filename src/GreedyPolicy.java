@@ -0,0 +1,42 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+//The greedy policy that plays every game unless a search is enabled: simulate every legal move of the next piece on a
+//scratch board, score the boards with a BatchEvaluator and take the move with the highest reward + utility.
+//PlayerSkeleton, BatchRunner and the benchmarks all play through pickMove(...), so they always agree on the move for a
+//given board and weight vector.
+public final class GreedyPolicy {
+
+	//Length of a weight vector - one weight for each feature of PlayerSkeleton.calculateUtility
+	public static final int NUM_WEIGHTS = FeatureKernel.HOLES + 1;
+
+	private GreedyPolicy() {
+	}
+
+	//Returns the index (into s.legalMoves()) of the best move for the next piece. The board and batch are scratch space,
+	//to be reused for every turn of every game on the calling thread.
+	public static int pickMove(State s, SimulationBoard board, BatchEvaluator batch, double[] weights) {
+		board.load(s.getField(), s.getTop());
+		batch.fill(board, s.getNextPiece());
+		batch.score(weights);
+
+		return batch.bestMove();
+	}
+
+	//Reads a weight vector of NUM_WEIGHTS weights, one per line, as written by PlayerSkeleton.
+	public static double[] readWeights(String fileName) throws IOException {
+		double[] weights = new double[NUM_WEIGHTS];
+		BufferedReader br = new BufferedReader(new FileReader(fileName));
+
+		try {
+			for (int i = 0; i < NUM_WEIGHTS; i++) {
+				weights[i] = Double.parseDouble(br.readLine());
+			}
+		} finally {
+			br.close();
+		}
+
+		return weights;
+	}
+}
@@ -0,0 +1,55 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//A Java Flight Recorder event covering one step of a tuning run - a generation of optimizeVector() or an adjustment of
+//improveVector() - with the games it took and the score of the vector it kept. See GameEvent for when it is recorded.
+@Name("tetris.OptimizerStep")
+@Label("Optimizer Step")
+@Category("Tetris")
+@Description("A generation or weight adjustment of a tuning run")
+@StackTrace(false)
+public class OptimizerStepEvent extends jdk.jfr.Event {
+
+	@Label("Method")
+	String method;
+
+	@Label("Step")
+	int step;
+
+	@Label("Candidates")
+	@Description("Weight vectors raced in the step")
+	int candidates;
+
+	@Label("Games Played")
+	long gamesPlayed;
+
+	@Label("Games Saved")
+	@Description("Games that racing did not need to play")
+	long gamesSaved;
+
+	@Label("Score")
+	@Description("Estimated average score of the weight vector after the step")
+	double score;
+
+	@Label("Improved")
+	@Description("True if the step replaced the weight vector")
+	boolean improved;
+
+	//Fills in the outcome of the step, whose race started gamesPlayed games, and commits the event, if it is being
+	//recorded.
+	public void end(String method, int step, StatisticalRace race, int gamesPlayed, double score, boolean improved) {
+		if (shouldCommit()) {
+			this.method = method;
+			this.step = step;
+			candidates = race.getNumCandidates();
+			this.gamesPlayed = gamesPlayed;
+			gamesSaved = race.getGamesSaved(gamesPlayed);
+			this.score = score;
+			this.improved = improved;
+			commit();
+		}
+	}
+}
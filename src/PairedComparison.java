@@ -0,0 +1,91 @@
+//Compares the scores of two weight vectors that played the same games - game i of both on the same piece sequence.
+//Playing both on common random numbers means most of the luck of a piece sequence cancels out of the per-game
+//differences, so the variance of the difference between the averages is far smaller than if the two had played
+//independent games, and fewer games are needed to tell the two apart.
+public class PairedComparison {
+	
+	private final int numGames;
+	private final double meanA;
+	private final double meanB;
+	private final double varianceA;
+	private final double varianceB;
+	private final double varianceDifference; //Sample variance of scoresA[i] - scoresB[i]
+	
+	public PairedComparison(int[] scoresA, int[] scoresB) {
+		if (scoresA.length != scoresB.length || scoresA.length == 0) {
+			throw new IllegalArgumentException("Both vectors must have played the same, non-zero number of games");
+		}
+		
+		numGames = scoresA.length;
+		double sumA = 0;
+		double sumB = 0;
+		
+		for (int i = 0; i < numGames; i++) {
+			sumA += scoresA[i];
+			sumB += scoresB[i];
+		}
+		
+		meanA = sumA / numGames;
+		meanB = sumB / numGames;
+		double squaresA = 0;
+		double squaresB = 0;
+		double squaresDifference = 0;
+		
+		for (int i = 0; i < numGames; i++) {
+			double a = scoresA[i] - meanA;
+			double b = scoresB[i] - meanB;
+			squaresA += a * a;
+			squaresB += b * b;
+			squaresDifference += (a - b) * (a - b);
+		}
+		
+		int degrees = Math.max(1, numGames - 1);
+		varianceA = squaresA / degrees;
+		varianceB = squaresB / degrees;
+		varianceDifference = squaresDifference / degrees;
+	}
+	
+	public int getNumGames() {
+		return numGames;
+	}
+	
+	public double getMeanA() {
+		return meanA;
+	}
+	
+	public double getMeanB() {
+		return meanB;
+	}
+	
+	//Average of scoresA[i] - scoresB[i], positive if A scored more
+	public double getMeanDifference() {
+		return meanA - meanB;
+	}
+	
+	//Standard error of the mean difference
+	public double getStdError() {
+		return Math.sqrt(varianceDifference / numGames);
+	}
+	
+	//Mean difference in standard errors. Infinite if every game differed by the same amount.
+	public double getTStatistic() {
+		double stdError = getStdError();
+		
+		if (stdError == 0) {
+			return getMeanDifference() == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, getMeanDifference());
+		}
+		
+		return getMeanDifference() / stdError;
+	}
+	
+	//True if A scored more than B with a one-sided confidence of z standard errors (e.g. 1.645 for 95%)
+	public boolean isBetter(double z) {
+		return getTStatistic() > z;
+	}
+	
+	//How many times as many games two independent samples would need for the same standard error, i.e. the variance
+	//of the difference of independent averages over that of the paired one.
+	public double getEfficiency() {
+		return varianceDifference == 0 ? Double.POSITIVE_INFINITY : (varianceA + varianceB) / varianceDifference;
+	}
+}
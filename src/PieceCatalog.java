@@ -0,0 +1,210 @@
+//An immutable, precomputed catalog of every piece, orientation and legal move, built once when the class is loaded.
+//The nested tables in State (pWidth, pBottom, legalMoves, ...), which are private to it and handed out only as copies,
+//are flattened into one-dimensional primitive arrays,
+//indexed by an orientation index (see orientIndex) or a move index, so that the game engines and the AI can read
+//them with a single array access. The arrays are private and never written after initialization, so the catalog is
+//safe to share between any number of concurrently running games.
+public final class PieceCatalog {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	//The widest/tallest a piece can be, used as the stride of the per-column and per-row tables
+	public static final int MAX_SIZE = 4;
+	//The largest number of legal moves any piece has
+	public static final int MAX_MOVES;
+	//The number of distinct (piece, orientation) pairs
+	public static final int NUM_ORIENTS;
+
+    //================================================================================
+    // Tables
+    //================================================================================
+
+	//First orientation index of each piece, and its number of orientations - [piece ID]
+	private static final int[] orientBase = new int[State.N_PIECES];
+	private static final int[] numOrients = new int[State.N_PIECES];
+	//[orientation index]
+	private static final int[] width;
+	private static final int[] height;
+	//[orientation index * MAX_SIZE + column of piece]
+	private static final int[] bottom;
+	private static final int[] top;
+	//Cells of the piece in each of its rows, leftmost column at bit 0 - [orientation index * MAX_SIZE + row of piece]
+	private static final int[] rowMask;
+	//The same, already shifted to every slot - [(orientation index * COLS + slot) * MAX_SIZE + row of piece]
+	private static final int[] slotRowMask;
+
+	//[piece ID]
+	private static final int[] numMoves = new int[State.N_PIECES];
+	//[piece ID * MAX_MOVES + move index], in the same order as State.legalMoves
+	private static final int[] moveOrient;
+	private static final int[] moveOrientIndex;
+	private static final int[] moveSlot;
+
+	static {
+		int[] pOrients = State.getpOrients();
+		int[][] pWidth = State.getpWidth();
+		int[][] pHeight = State.getpHeight();
+		int[][][] pBottom = State.getpBottom();
+		int[][][] pTop = State.getpTop();
+		int orients = 0;
+		int maxMoves = 0;
+
+		for (int i = 0; i < State.N_PIECES; i++) {
+			orientBase[i] = orients;
+			numOrients[i] = pOrients[i];
+			orients += pOrients[i];
+			numMoves[i] = State.getLegalMoves(i).length;
+			maxMoves = Math.max(maxMoves, numMoves[i]);
+		}
+
+		NUM_ORIENTS = orients;
+		MAX_MOVES = maxMoves;
+		width = new int[NUM_ORIENTS];
+		height = new int[NUM_ORIENTS];
+		bottom = new int[NUM_ORIENTS * MAX_SIZE];
+		top = new int[NUM_ORIENTS * MAX_SIZE];
+		rowMask = new int[NUM_ORIENTS * MAX_SIZE];
+		slotRowMask = new int[NUM_ORIENTS * State.COLS * MAX_SIZE];
+		moveOrient = new int[State.N_PIECES * MAX_MOVES];
+		moveOrientIndex = new int[State.N_PIECES * MAX_MOVES];
+		moveSlot = new int[State.N_PIECES * MAX_MOVES];
+
+		for (int i = 0; i < State.N_PIECES; i++) {
+			for (int j = 0; j < pOrients[i]; j++) {
+				int o = orientBase[i] + j;
+				width[o] = pWidth[i][j];
+				height[o] = pHeight[i][j];
+
+				for (int c = 0; c < width[o]; c++) {
+					bottom[o * MAX_SIZE + c] = pBottom[i][j][c];
+					top[o * MAX_SIZE + c] = pTop[i][j][c];
+
+					for (int h = bottom[o * MAX_SIZE + c]; h < top[o * MAX_SIZE + c]; h++) {
+						rowMask[o * MAX_SIZE + h] |= 1 << c;
+					}
+				}
+
+				for (int slot = 0; slot + width[o] <= State.COLS; slot++) {
+					for (int h = 0; h < height[o]; h++) {
+						slotRowMask[(o * State.COLS + slot) * MAX_SIZE + h] = rowMask[o * MAX_SIZE + h] << slot;
+					}
+				}
+			}
+
+			int[][] legalMoves = State.getLegalMoves(i);
+
+			for (int m = 0; m < numMoves[i]; m++) {
+				moveOrient[i * MAX_MOVES + m] = legalMoves[m][State.ORIENT];
+				moveOrientIndex[i * MAX_MOVES + m] = orientBase[i] + moveOrient[i * MAX_MOVES + m];
+				moveSlot[i * MAX_MOVES + m] = legalMoves[m][State.SLOT];
+			}
+		}
+	}
+
+	private PieceCatalog() {
+	}
+
+    //================================================================================
+    // Lookups
+    //================================================================================
+
+	public static int orientIndex(int piece, int orient) {
+		return orientBase[piece] + orient;
+	}
+
+	public static int numOrients(int piece) {
+		return numOrients[piece];
+	}
+
+	public static int width(int orientIndex) {
+		return width[orientIndex];
+	}
+
+	public static int height(int orientIndex) {
+		return height[orientIndex];
+	}
+
+	//Lowest filled row of the given column of the piece
+	public static int bottom(int orientIndex, int col) {
+		return bottom[orientIndex * MAX_SIZE + col];
+	}
+
+	//Highest filled row + 1 of the given column of the piece
+	public static int top(int orientIndex, int col) {
+		return top[orientIndex * MAX_SIZE + col];
+	}
+
+	//Bitmask of the cells of the given row of the piece, with the piece's leftmost column at bit 0
+	public static int rowMask(int orientIndex, int row) {
+		return rowMask[orientIndex * MAX_SIZE + row];
+	}
+
+	//Bitmask of the cells of the given row of the piece when it is placed at the given slot
+	public static int rowMask(int orientIndex, int slot, int row) {
+		return slotRowMask[(orientIndex * State.COLS + slot) * MAX_SIZE + row];
+	}
+
+	public static int numMoves(int piece) {
+		return numMoves[piece];
+	}
+
+	public static int moveOrient(int piece, int move) {
+		return moveOrient[piece * MAX_MOVES + move];
+	}
+
+	public static int moveSlot(int piece, int move) {
+		return moveSlot[piece * MAX_MOVES + move];
+	}
+
+	public static int moveOrientIndex(int piece, int move) {
+		return moveOrientIndex[piece * MAX_MOVES + move];
+	}
+
+	//The legal moves of the piece as State.legalMoves() gives them, [move index][State.ORIENT or State.SLOT], in a
+	//new array on every call, so that the caller may do as it likes with it
+	public static int[][] legalMoves(int piece) {
+		int[][] moves = new int[numMoves[piece]][2];
+
+		for (int m = 0; m < moves.length; m++) {
+			moves[m][State.ORIENT] = moveOrient[piece * MAX_MOVES + m];
+			moves[m][State.SLOT] = moveSlot[piece * MAX_MOVES + m];
+		}
+
+		return moves;
+	}
+
+    //================================================================================
+    // Placement kernel
+    //================================================================================
+
+	//Returns the row the bottom of the piece comes to rest on when it is dropped at the given slot: the highest of
+	//top[slot+c] - bottom(c) over the columns of the piece. The loop over the piece's width is unrolled, since no
+	//piece is wider than MAX_SIZE.
+	public static int landingHeight(int[] top, int orientIndex, int slot) {
+		int b = orientIndex * MAX_SIZE;
+
+		switch (width[orientIndex]) {
+			case 1:
+				return top[slot] - bottom[b];
+			case 2:
+				return Math.max(top[slot] - bottom[b], top[slot+1] - bottom[b+1]);
+			case 3:
+				return Math.max(Math.max(top[slot] - bottom[b], top[slot+1] - bottom[b+1]),
+						top[slot+2] - bottom[b+2]);
+			default:
+				return Math.max(Math.max(top[slot] - bottom[b], top[slot+1] - bottom[b+1]),
+						Math.max(top[slot+2] - bottom[b+2], top[slot+3] - bottom[b+3]));
+		}
+	}
+
+	//Raises the top of every column covered by a piece that landed at the given height and slot.
+	public static void updateTop(int[] top, int orientIndex, int slot, int landingHeight) {
+		int b = orientIndex * MAX_SIZE;
+
+		for (int c = 0; c < width[orientIndex]; c++) {
+			top[slot+c] = landingHeight + PieceCatalog.top[b+c];
+		}
+	}
+}
@@ -0,0 +1,8 @@
+//A source of pieces for a game. State and BitboardState draw every piece from one of these, so a game can be given
+//its own seeded generator instead of sharing Math.random() with every other game, or be fed an exact piece sequence
+//to replay it.
+public interface PieceGenerator {
+
+	//Returns the ID (0-6) of the next piece to be played.
+	int nextPiece();
+}
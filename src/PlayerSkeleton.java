@@ -1,75 +1,80 @@
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class PlayerSkeleton {
+public class PlayerSkeleton implements Evaluator {
 	
     //================================================================================
     // Constants
     //================================================================================
 	
-	private static final int VECTOR_SIZE = 21;
+	private static final int VECTOR_SIZE = GreedyPolicy.NUM_WEIGHTS;
 	private static final String FILENAME_VECTOR = "weights.txt";
 	private static final String FILENAME_SCORE = "score.txt";
+	private static final String FILENAME_CHECKPOINT = "checkpoint.txt";
+	private static final String FILENAME_CANDIDATES = "candidates.log"; //Every vector evaluated, appended to
+	private static final long CHECKPOINT_INTERVAL_MILLIS = 60000; //Time between checkpoints of a tuning run
+	private static final long REPORT_INTERVAL_MILLIS = 10000; //Time between the progress lines of main
+	private static final int EVAL_CACHE_SIZE = 1 << 18; //Number of entries in the evaluation cache
+	
+	//Cross-entropy method (see optimizeVector)
+	private static final int POPULATION_SIZE = 100; //Vectors sampled per generation
+	private static final int NUM_ELITES = 10; //Best vectors of a generation that the next one is fitted to
+	private static final double INITIAL_STD_DEV = 0.001; //Spread of the first generation around the current vector
+	private static final double NOISE = 1e-7; //Variance added to every weight after refitting, decaying to 0...
+	private static final int NOISE_GENERATIONS = 50; //...over this many generations
+	
+	//Racing (see StatisticalRace)
+	private static final int ROUND_SIZE = 5; //Games per vector per round
+	private static final int ROUNDS_AHEAD = 2; //Rounds in flight at once, so no worker waits for a round to finish
+	private static final double RACE_Z = 2.33; //Standard errors by which a vector must be beaten to be eliminated
+	private static final double CONFIDENCE_Z = 1.96; //Width of the reported confidence intervals (95%)
 	
     //================================================================================
     // Fields
     //================================================================================
 	
-	private static int[][] pWidth = {
-			{2},
-			{1,4},
-			{2,3,2,3},
-			{2,3,2,3},
-			{2,3,2,3},
-			{3,2},
-			{3,2}
-	};
-	
-	private static int[][] pHeight = {
-			{2},
-			{4,1},
-			{3,2,3,2},
-			{3,2,3,2},
-			{3,2,3,2},
-			{2,3},
-			{2,3}
-	};
-	
-	private static int[][][] pBottom = {
-		{{0,0}},
-		{{0},{0,0,0,0}},
-		{{0,0},{0,1,1},{2,0},{0,0,0}},
-		{{0,0},{0,0,0},{0,2},{1,1,0}},
-		{{0,1},{1,0,1},{1,0},{0,0,0}},
-		{{0,0,1},{1,0}},
-		{{1,0,0},{0,1}}
-	};
-	
-	private static int[][][] pTop = {
-		{{2,2}},
-		{{4},{1,1,1,1}},
-		{{3,1},{2,2,2},{3,3},{1,1,2}},
-		{{1,3},{2,1,1},{3,3},{2,2,2}},
-		{{3,2},{2,2,2},{2,3},{1,2,1}},
-		{{1,2,2},{3,2}},
-		{{2,2,1},{2,3}}
-	};
-	
 	private double[] weightVector;
 	private double[] adjustments; //Contains the values of adjustments to be made to each weight 
-	private double maxAvgScore; //The maximum average score carried over from previous sessions
-	private ExecutorService service = Executors.newCachedThreadPool(); //To manage asynchronous and concurrent threads.
+	private double maxAvgScore; //The average score of the weight vector, carried over from previous sessions
+	private int weightVersion = 0; //Last cache-key version handed to a VectorEvaluator, each one gets its own
+	private volatile VectorEvaluator evaluator; //Scores boards with weightVector, replaced whenever it changes
+	private EvaluationCache evalCache = new EvaluationCache(EVAL_CACHE_SIZE); //Shared by all game threads
+	private GameScheduler scheduler = new GameScheduler(); //Plays games in parallel, one worker per core
+	private ThreadLocal<SimulationBoard> boards = new ThreadLocal<SimulationBoard>() { //Scratch board of each worker
+		@Override
+		protected SimulationBoard initialValue() {
+			return new SimulationBoard();
+		}
+	};
+	private ThreadLocal<BatchEvaluator> batches = new ThreadLocal<BatchEvaluator>() { //Feature matrix of each worker
+		@Override
+		protected BatchEvaluator initialValue() {
+			return new BatchEvaluator(VECTOR_SIZE);
+		}
+	};
+	private boolean batchEvaluation = true; //Score all candidates of a turn with one matrix-vector product, see pickMove
+	private ExpectimaxSearch search = null; //Lookahead over the next pieces, or null to pick moves greedily
+	private ExpectimaxSearch tuningSearch = null; //The same search, but sequential, for the games of the tuning runs
+	private long seedState = new SplittableRandom().nextLong(); //State of the seeds of the games vectors play
+	private long gamesSaved = 0; //Games that racing did not need to play
+	private int moveBudget = Integer.MAX_VALUE; //Games of weight vectors are stopped after this many moves...
+	private int lineBudget = Integer.MAX_VALUE; //...or this many rows cleared, and their scores extrapolated
+	private long gameTimeLimit = Long.MAX_VALUE; //Milliseconds after which a game of a weight vector is stopped
+	private ReplayWriter replays = null; //Records every game played, tuning games included, if not null
+	private RunMetrics metrics = scheduler.getMetrics(); //Every game played, recorded by the scheduler and playGame()
+	private EngineStats stats = new EngineStats(); //Phase timings and games in flight, published over JMX by main
 
     //================================================================================
     // Constructor
@@ -80,29 +85,27 @@ public class PlayerSkeleton {
 		adjustments = new double[VECTOR_SIZE];
 		Arrays.fill(adjustments, -0.001); //Can be fine-tuned
 		readVectorFromFile(FILENAME_VECTOR);
+		weightsChanged();
 		readScoreFromFile(FILENAME_SCORE);
+		stats.setBest(weightVector, maxAvgScore);
 	}
 	
     //================================================================================
     // File IO methods
     //================================================================================
 	
-	private void writeVectorToFile(String fileName) throws FileNotFoundException {
-		PrintWriter pw = new PrintWriter(new File(fileName)); //Tries to create the file if it does not exist
+	private void writeVectorToFile(String fileName) throws IOException {
+		StringBuilder sb = new StringBuilder();
 		
 		for (int i = 0; i < VECTOR_SIZE; i++) {
-			pw.println(weightVector[i]);
+			sb.append(weightVector[i]).append(System.lineSeparator());
 		}
 		
-		pw.flush();
-		pw.close();
+		Checkpoint.writeAtomically(fileName, sb.toString()); //Never leaves a half-written file behind
 	}
 	
-	private void writeScoreToFile(double score, String fileName) throws FileNotFoundException {
-		PrintWriter pw = new PrintWriter(new File(fileName)); //Tries to create the file if it does not exist
-		pw.print(score);
-		pw.flush();
-		pw.close();
+	private void writeScoreToFile(double score, String fileName) throws IOException {
+		Checkpoint.writeAtomically(fileName, Double.toString(score));
 	}
 	
 	private void readVectorFromFile(String fileName) throws IOException {
@@ -111,13 +114,7 @@ public class PlayerSkeleton {
 		if (!f.exists()) {
 			writeVectorToFile(fileName); //Writes initial weight vector of all zeroes to file
 		} else {
-			BufferedReader br = new BufferedReader(new FileReader(f));
-			
-			for (int i = 0; i < VECTOR_SIZE; i++) {
-				weightVector[i] = Double.parseDouble(br.readLine());
-			}
-			
-			br.close();
+			weightVector = GreedyPolicy.readWeights(fileName);
 		}
 	}
 	
@@ -134,69 +131,491 @@ public class PlayerSkeleton {
 		}
 	}
 	
+	//Saves the state of a tuning run - the given method's own progress in checkpoint, plus the weights, their score,
+	//the seed state and the games saved - and writes the weights and score to their files as well.
+	private void writeCheckpoint(String method, Checkpoint checkpoint) throws IOException {
+		checkpoint.set("method", method);
+		checkpoint.set("weights", weightVector);
+		checkpoint.set("maxAvgScore", maxAvgScore);
+		checkpoint.set("seedState", seedState);
+		checkpoint.set("gamesSaved", gamesSaved);
+		writeVectorToFile(FILENAME_VECTOR);
+		writeScoreToFile(maxAvgScore, FILENAME_SCORE);
+		checkpoint.write(FILENAME_CHECKPOINT);
+	}
+	
+	//Restores the state saved by the last checkpoint of the given method and returns the checkpoint, or returns null 
+	//if there is no checkpoint of that method to resume.
+	private Checkpoint readCheckpoint(String method) throws IOException {
+		Checkpoint checkpoint = Checkpoint.read(FILENAME_CHECKPOINT);
+		
+		if (checkpoint == null || !checkpoint.getString("method").equals(method)) {
+			return null;
+		}
+		
+		setWeightVector(checkpoint.getDoubles("weights"));
+		maxAvgScore = checkpoint.getDouble("maxAvgScore");
+		seedState = checkpoint.getLong("seedState");
+		gamesSaved = checkpoint.getLong("gamesSaved");
+		System.out.println("Resuming " + method + " from step " + checkpoint.getInt("step"));
+		trimCandidateLog(method, checkpoint.getInt("step"));
+		
+		return checkpoint;
+	}
+	
+	//Removes the entries that the interrupted run logged after its last checkpoint - the lines at the end of the
+	//candidate log of the given method with a step of at least fromStep - since the resumed run evaluates those steps
+	//again. Earlier runs of the method are left alone.
+	private static void trimCandidateLog(String method, int fromStep) throws IOException {
+		File f = new File(FILENAME_CANDIDATES);
+		
+		if (!f.exists()) {
+			return;
+		}
+		
+		List<String> lines = Files.readAllLines(f.toPath());
+		int end = lines.size();
+		
+		while (end > 0) {
+			String[] fields = lines.get(end - 1).split(" ", 3);
+			
+			if (fields.length < 3 || !fields[0].equals(method) || Integer.parseInt(fields[1]) < fromStep) {
+				break;
+			}
+			
+			end--;
+		}
+		
+		if (end < lines.size()) {
+			StringBuilder sb = new StringBuilder();
+			
+			for (String line : lines.subList(0, end)) {
+				sb.append(line).append(System.lineSeparator());
+			}
+			
+			Checkpoint.writeAtomically(FILENAME_CANDIDATES, sb.toString());
+		}
+	}
+	
+	//Writes a final checkpoint and removes it, so that the next run starts afresh from the weights it wrote.
+	private void finishCheckpoints(String method, Checkpoint checkpoint) throws IOException {
+		writeCheckpoint(method, checkpoint);
+		Files.deleteIfExists(new File(FILENAME_CHECKPOINT).toPath());
+	}
+	
+	//Appends a line per vector of a race to the candidate log: the method and step it was evaluated in, its index, 
+	//games played, average score, whether it survived the race, and its weights.
+	private void logCandidates(String method, int step, double[][] vectors, StatisticalRace race) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		
+		for (int c = 0; c < vectors.length; c++) {
+			sb.append(method).append(' ').append(step).append(' ').append(c).append(' ')
+					.append(race.getEstimate(c).getNumGames()).append(' ').append(race.getAverage(c)).append(' ')
+					.append(race.isAlive(c) ? "alive" : "eliminated");
+			
+			for (int i = 0; i < VECTOR_SIZE; i++) {
+				sb.append(i == 0 ? ' ' : ',').append(vectors[c][i]);
+			}
+			
+			sb.append(System.lineSeparator());
+		}
+		
+		FileWriter fw = new FileWriter(FILENAME_CANDIDATES, true);
+		
+		try {
+			fw.write(sb.toString());
+		} finally {
+			fw.close();
+		}
+	}
+	
     //================================================================================
     // Miscellaneous
     //================================================================================
 	
-	//Improves the current weight vector via an iterative learning method. Uncomment the lines if you want to improve 
-	//the vector.
-	private void improveVector(int numAdjustments, int numGamesToPlay) {
+	//Improves the current weight vector via an iterative learning method: each weight in turn is adjusted, and the 
+	//adjustment is kept if the adjusted vector outscores the current one. Both play the same piece sequences, so that
+	//the comparison is paired (see PairedComparison) rather than decided by which vector was dealt the luckier pieces,
+	//and they are raced against each other, so the comparison stops as soon as either is clearly better.
+	//A checkpoint is written every CHECKPOINT_INTERVAL_MILLIS, and an interrupted run resumes from the last one.
+	private void improveVector(int numAdjustments, int numGamesToPlay) throws IOException {
 		int currWeightIndex = 0; //Index of current weight to be adjusted
+		int start = 0;
+		Checkpoint checkpoint = readCheckpoint("improveVector");
+		
+		if (checkpoint != null) {
+			start = checkpoint.getInt("step");
+			currWeightIndex = checkpoint.getInt("weightIndex");
+		}
 		
-		for (int i = 0; i < numAdjustments; i++) {
-			//weightVector[currWeightIndex] += adjustments[currWeightIndex];
-			double currAvgScore = playGames(numGamesToPlay);
+		long lastCheckpoint = System.nanoTime();
+		
+		for (int i = start; i < numAdjustments; i++) {
+			OptimizerStepEvent event = new OptimizerStepEvent();
+			event.begin();
+			double[] adjusted = weightVector.clone();
+			adjusted[currWeightIndex] += adjustments[currWeightIndex];
+			double[][] vectors = {weightVector.clone(), adjusted};
+			StatisticalRace race = new StatisticalRace(2, numGamesToPlay, 1, RACE_Z);
+			int gamesPlayed = race(vectors, race);
+			logCandidates("improveVector", i, vectors, race);
 
-			if (currAvgScore > maxAvgScore) {
-				maxAvgScore = currAvgScore;
-			} else { 
-				//weightVector[currWeightIndex] -= adjustments[currWeightIndex]; //Undo adjustments
+			boolean improved = race.isAlive(1) && (!race.isAlive(0) || race.getAverage(1) > race.getAverage(0));
+			
+			if (improved) {
+				adjustWeight(currWeightIndex, adjustments[currWeightIndex]);
+				maxAvgScore = estimateScore(race.getEstimate(1));
+				stats.setBest(weightVector, maxAvgScore);
 			}
+			
+			event.end("improveVector", i, race, gamesPlayed, maxAvgScore, improved);
 		
 			currWeightIndex = (currWeightIndex + 1) % (VECTOR_SIZE);
+			checkpoint = new Checkpoint();
+			checkpoint.set("step", i + 1);
+			checkpoint.set("weightIndex", currWeightIndex);
+			
+			if (System.nanoTime() - lastCheckpoint >= CHECKPOINT_INTERVAL_MILLIS * 1000000) {
+				writeCheckpoint("improveVector", checkpoint);
+				lastCheckpoint = System.nanoTime();
+			}
+		}
+		
+		if (checkpoint != null) {
+			finishCheckpoints("improveVector", checkpoint);
 		}
 		
-		service.shutdown();
+		scheduler.shutdown();
 	}
 	
-	//Plays the specified number of games, and returns the average score. Here, games are played in separate threads 
-	//to facilitate parallelization.
-	private double playGames(int numGamesToPlay) {
-		ArrayList<Future<Integer>> scores = new ArrayList<>(numGamesToPlay);
+	//Tunes the weight vector with the cross-entropy method (see CrossEntropyOptimizer), starting from the current
+	//vector. Every generation, the current vector, the distribution's mean and the whole population are scored together
+	//on the scheduler, all on the same piece sequences, so that the elites are chosen by how the vectors played rather
+	//than by which pieces they were dealt. The population is raced for the elite places, so vectors that cannot be
+	//elites stop playing early; the current vector and the mean play all numGamesToPlay games. Whenever the mean
+	//outscores the current vector on those games, it becomes the weight vector and is written to file with its score.
+	//The run is checkpointed after every generation, and an interrupted run resumes from the last checkpoint.
+	private void optimizeVector(int numGenerations, int numGamesToPlay) throws IOException {
+		CrossEntropyOptimizer optimizer = new CrossEntropyOptimizer(weightVector, INITIAL_STD_DEV, POPULATION_SIZE,
+				NUM_ELITES, NOISE, NOISE_GENERATIONS, System.nanoTime());
+		int start = 0;
+		Checkpoint checkpoint = readCheckpoint("optimizeVector");
 		
-		for (int i = 0; i < numGamesToPlay; i++) {
-			Future<Integer> score = service.submit(new Callable<Integer>(){
-				@Override
-				public Integer call() throws Exception {
-					return playGame();
+		if (checkpoint != null) {
+			start = checkpoint.getInt("step");
+			optimizer = new CrossEntropyOptimizer(checkpoint.getDoubles("cem.mean"), checkpoint.getDoubles("cem.variance"),
+					checkpoint.getInt("cem.generation"), POPULATION_SIZE, NUM_ELITES, NOISE, NOISE_GENERATIONS,
+					checkpoint.getLong("cem.seed"));
+		}
+		
+		for (int g = start; g < numGenerations; g++) {
+			OptimizerStepEvent event = new OptimizerStepEvent();
+			event.begin();
+			double[][] population = optimizer.samplePopulation();
+			double[][] candidates = new double[POPULATION_SIZE + 2][];
+			candidates[0] = weightVector.clone();
+			candidates[1] = optimizer.getMean();
+			System.arraycopy(population, 0, candidates, 2, POPULATION_SIZE);
+			
+			StatisticalRace race = new StatisticalRace(candidates.length, numGamesToPlay, NUM_ELITES, RACE_Z);
+			race.protect(0);
+			race.protect(1);
+			int gamesPlayed = race(candidates, race);
+			logCandidates("optimizeVector", g, candidates, race);
+			
+			double[] populationScores = new double[POPULATION_SIZE];
+			double bestSample = 0;
+			
+			for (int i = 0; i < POPULATION_SIZE; i++) {
+				//Eliminated vectors are known not to be elites, whatever their average over fewer games
+				populationScores[i] = race.isAlive(i + 2) ? race.getAverage(i + 2) : Double.NEGATIVE_INFINITY;
+				bestSample = Math.max(bestSample, populationScores[i]);
+			}
+			
+			optimizer.update(population, populationScores);
+			TruncatedScoreEstimate estimate = race.getEstimate(1);
+			
+			System.out.printf("Generation %d: mean scored %.1f (%+.1f over current vector), best elite %.1f, "
+					+ "%d of %d games saved by racing%n", g, race.getAverage(1), race.getAverage(1) - race.getAverage(0),
+					bestSample, race.getGamesSaved(gamesPlayed), candidates.length * numGamesToPlay);
+			System.out.printf("  mean's estimated average score %.1f (95%% CI %.1f to %.1f), %d of %d games truncated%n",
+					estimate.getMean(), estimate.getLower(CONFIDENCE_Z), estimate.getUpper(CONFIDENCE_Z),
+					estimate.getNumTruncated(), estimate.getNumGames());
+			
+			boolean improved = race.getAverage(1) > race.getAverage(0);
+			
+			if (improved) {
+				maxAvgScore = estimateScore(estimate);
+				setWeightVector(candidates[1]);
+				stats.setBest(weightVector, maxAvgScore);
+			}
+			
+			event.end("optimizeVector", g, race, gamesPlayed, maxAvgScore, improved);
+			
+			//A generation takes long enough that every one is worth a checkpoint
+			checkpoint = new Checkpoint();
+			checkpoint.set("step", g + 1);
+			checkpoint.set("cem.mean", optimizer.getMean());
+			checkpoint.set("cem.variance", optimizer.getVariance());
+			checkpoint.set("cem.generation", optimizer.getGeneration());
+			checkpoint.set("cem.seed", optimizer.getSeed());
+			writeCheckpoint("optimizeVector", checkpoint);
+		}
+		
+		if (checkpoint != null) {
+			finishCheckpoints("optimizeVector", checkpoint);
+		}
+		
+		scheduler.shutdown();
+	}
+	
+	//Runs the race between the given vectors to the end. The games stream through an EvaluationPipeline rather than
+	//being played round by round: up to ROUNDS_AHEAD rounds of ROUND_SIZE games on shared seeds are in flight at once,
+	//a round is added to the race as soon as every vector still alive has finished its games of it, and the games of
+	//vectors eliminated by then are cancelled. The workers therefore never sit idle waiting for the slowest game of a
+	//round. Returns the games that were started, including those of rounds run ahead that the race did not need.
+	private int race(final double[][] vectors, StatisticalRace race) {
+		final VectorEvaluator[] evaluators = new VectorEvaluator[vectors.length];
+		
+		for (int c = 0; c < vectors.length; c++) {
+			evaluators[c] = new VectorEvaluator(vectors[c], ++weightVersion);
+		}
+		
+		EvaluationPipeline pipeline = new EvaluationPipeline(scheduler, new EvaluationPipeline.Player() {
+			@Override
+			public State play(EvaluationPipeline.WorkItem item) {
+				return playGame(evaluators[item.getCandidate()], item);
+			}
+		});
+		
+		int maxGames = race.getMaxGames();
+		int numRounds = (maxGames + ROUND_SIZE - 1) / ROUND_SIZE;
+		long[] seeds = nextSeeds(maxGames);
+		EvaluationPipeline.WorkItem[][] items = new EvaluationPipeline.WorkItem[vectors.length][maxGames];
+		boolean[][] done = new boolean[vectors.length][maxGames];
+		List<EvaluationPipeline.WorkItem> submitted = new ArrayList<>();
+		int submittedRounds = 0;
+		int completedRounds = 0;
+		
+		while (!race.isFinished()) {
+			for (; submittedRounds < Math.min(numRounds, completedRounds + ROUNDS_AHEAD); submittedRounds++) {
+				int from = submittedRounds * ROUND_SIZE;
+				int to = Math.min(maxGames, from + ROUND_SIZE);
+				
+				for (int c : race.getAlive()) {
+					for (int g = from; g < to; g++) {
+						items[c][g] = pipeline.submit(c, g, seeds[g], gameTimeLimit);
+						submitted.add(items[c][g]);
+					}
 				}
-			});
+			}
+			
+			EvaluationPipeline.WorkItem item = pipeline.take();
+			done[item.getCandidate()][item.getGame()] = true;
 			
-			scores.add(score);
+			while (completedRounds < submittedRounds && !race.isFinished()
+					&& isRoundDone(race, done, completedRounds, maxGames)) {
+				int from = completedRounds * ROUND_SIZE;
+				int to = Math.min(maxGames, from + ROUND_SIZE);
+				int[] alive = race.getAlive();
+				int[][] roundScores = new int[alive.length][to - from];
+				boolean[][] roundLost = new boolean[alive.length][to - from];
+				
+				for (int i = 0; i < alive.length; i++) {
+					for (int g = from; g < to; g++) {
+						roundScores[i][g - from] = items[alive[i]][g].getScore();
+						roundLost[i][g - from] = items[alive[i]][g].hasLost();
+					}
+				}
+				
+				race.addRound(alive, roundScores, roundLost);
+				completedRounds++;
+				
+				//Stop the games of the vectors that were just eliminated
+				for (int c = 0; c < vectors.length; c++) {
+					for (int g = 0; g < maxGames && !race.isAlive(c); g++) {
+						if (items[c][g] != null) {
+							items[c][g].cancel();
+						}
+					}
+				}
+			}
 		}
 		
-		int sumOfScores = 0;
+		pipeline.drain(submitted);
+		int gamesPlayed = 0;
+		int timedOut = 0;
 		
-		for (int i = 0; i < numGamesToPlay; i++) {
-			try {
-				sumOfScores += scores.get(i).get();
-			} catch (InterruptedException | ExecutionException e) {
-				e.printStackTrace();
+		for (EvaluationPipeline.WorkItem submittedItem : submitted) {
+			gamesPlayed += submittedItem.wasStarted() ? 1 : 0;
+			timedOut += submittedItem.hasTimedOut() ? 1 : 0;
+		}
+		
+		if (timedOut > 0) {
+			System.out.printf("  %d games stopped by the time limit of %d ms, so their comparison is not paired%n",
+					timedOut, gameTimeLimit);
+		}
+		
+		gamesSaved += race.getGamesSaved(gamesPlayed);
+		return gamesPlayed;
+	}
+	
+	//True if every vector still alive in the race has finished its games of the given round
+	private static boolean isRoundDone(StatisticalRace race, boolean[][] done, int round, int maxGames) {
+		for (int c : race.getAlive()) {
+			for (int g = round * ROUND_SIZE; g < Math.min(maxGames, (round + 1) * ROUND_SIZE); g++) {
+				if (!done[c][g]) {
+					return false;
+				}
 			}
 		}
 		
-		return (double) sumOfScores / numGamesToPlay;
+		return true;
+	}
+	
+	//The estimated average score of a vector whose games may have been truncated - the lower end of its confidence
+	//interval if none of them was lost within the budget, since the estimate itself is then unbounded.
+	private static double estimateScore(TruncatedScoreEstimate estimate) {
+		return estimate.isBounded() ? estimate.getMean() : estimate.getLower(CONFIDENCE_Z);
+	}
+	
+	//Stops the games played for tuning after maxMoves moves or maxLines rows cleared, whichever comes first, so that
+	//strong vectors cost a bounded time per game. Vectors are then compared by their truncated scores, and their
+	//averages extrapolated with TruncatedScoreEstimate. Games that still run after maxMillis are stopped there too,
+	//but only pass Long.MAX_VALUE (no limit) unless a safety cap is needed: where a game stops on the clock depends on
+	//the load of the machine, so two vectors no longer play the same truncated game on a seed and the comparison is
+	//no longer paired. race() reports how many games were stopped that way.
+	private void setGameBudget(int maxMoves, int maxLines, long maxMillis) {
+		moveBudget = maxMoves;
+		lineBudget = maxLines;
+		gameTimeLimit = maxMillis;
 	}
 	
-	//Plays a game and returns the score i.e number of rows cleared. Uncomment the lines if you want to see visual output.
-	private int playGame() {
-		State s = new State();
-		//new TFrame(s);
+	//Returns numSeeds fresh piece sequence seeds, to be played by every vector of a comparison. The seeds are a 
+	//SplitMix64 sequence, whose whole state is the single long seedState, so that a checkpoint can save it.
+	private long[] nextSeeds(int numSeeds) {
+		long[] seeds = new long[numSeeds];
+		
+		for (int i = 0; i < numSeeds; i++) {
+			seedState += 0x9E3779B97F4A7C15L;
+			long z = seedState;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			seeds[i] = z ^ (z >>> 31);
+		}
+		
+		return seeds;
+	}
+	
+	//Changes a weight. All weight changes must go through here so that the evaluation cache is invalidated.
+	private void adjustWeight(int index, double delta) {
+		weightVector[index] += delta;
+		weightsChanged();
+	}
+	
+	private void setWeightVector(double[] vector) {
+		System.arraycopy(vector, 0, weightVector, 0, VECTOR_SIZE);
+		weightsChanged();
+	}
+	
+	//Gives weightVector a new evaluator with a version of its own, so the utilities cached for the old weights expire
+	private void weightsChanged() {
+		evaluator = new VectorEvaluator(weightVector, ++weightVersion);
+	}
+	
+	//Switches from greedy move selection to an expectimax search over the next depth - 1 unknown pieces, which gives
+	//up on deeper plies once timeBudgetMillis has passed for a move. Both playGame() and the games of the tuning runs
+	//search. With parallel set, the candidates of every move of playGame() are spread over the scheduler's workers;
+	//tuning games always search sequentially, since they already keep every worker busy with a game of its own.
+	private void enableSearch(int depth, long timeBudgetMillis, boolean parallel) {
+		ForkJoinPool pool = parallel ? scheduler.getPool() : null;
+		search = new ExpectimaxSearch(this, pool, depth, timeBudgetMillis, true, parallel);
+		tuningSearch = parallel ? new ExpectimaxSearch(this, null, depth, timeBudgetMillis, true, false) : search;
+	}
+	
+	//Plays the game of a work item on its seed, with the given evaluator instead of that of weightVector, so that games
+	//of different vectors can run at the same time. Moves are picked as in playGame() - by the search if it is enabled,
+	//otherwise greedily - except that the search runs sequentially. The game stops when it is lost, its budget runs out
+	//or the item is cancelled, and is recorded if replays are enabled.
+	private State playGame(VectorEvaluator evaluator, EvaluationPipeline.WorkItem item) {
+		GameEvent event = new GameEvent();
+		event.begin();
+		event.seed = item.getSeed();
+		stats.gameStarted(item.getQueueNanos());
+		State s = new State(item.getSeed());
+		SimulationBoard board = boards.get();
+		BatchEvaluator batch = batches.get();
+		ReplayWriter.Game replay = replays == null ? null : new ReplayWriter.Game(item.getSeed());
+		
+		try {
+			while (!s.hasLost() && s.getTurnNumber() < moveBudget && s.getRowsCleared() < lineBudget
+					&& !item.shouldStop()) {
+				int piece = s.getNextPiece();
+				int move;
+				
+				//Only the greedy batch turns are sampled, since the phases timed are theirs
+				if (tuningSearch == null && batchEvaluation && stats.isSampled(s.getTurnNumber())) {
+					move = playSampledTurn(s, board, batch, evaluator.weights);
+				} else {
+					move = pickMove(s, board, evaluator, tuningSearch);
+					s.makeMove(move);
+				}
+				
+				if (replay != null) {
+					replay.recordMove(piece, PieceCatalog.moveOrient(piece, move), PieceCatalog.moveSlot(piece, move));
+				}
+			}
+		} finally {
+			stats.gameFinished();
+		}
+		
+		event.end(s);
+		
+		//The scheduler records the game in metrics, truncated games with the score they were stopped at, unless the
+		//game was cancelled - and a cancelled game is not worth a replay either
+		if (!item.isCancelled()) {
+			writeReplay(replay, s);
+		}
+		
+		return s;
+	}
+	
+	//Plays one turn exactly like GreedyPolicy.pickMove(...), timing each of its phases for the stats. Returns the move.
+	private int playSampledTurn(State s, SimulationBoard board, BatchEvaluator batch, double[] vector) {
+		long start = System.nanoTime();
+		board.load(s.getField(), s.getTop());
+		long copied = System.nanoTime();
+		batch.fill(board, s.getNextPiece());
+		long simulated = System.nanoTime();
+		batch.score(vector);
+		int move = batch.bestMove();
+		long evaluated = System.nanoTime();
+		s.makeMove(move);
+		stats.turnSampled(start, copied, simulated, evaluated, System.nanoTime());
+		return move;
+	}
+	
+	//Plays a game and returns its final state, whose score i.e number of rows cleared is s.getRowsCleared(). Uncomment 
+	//the lines if you want to see visual output.
+	private State playGame() {
+		long seed = ThreadLocalRandom.current().nextLong();
+		GameEvent event = new GameEvent();
+		event.begin();
+		event.seed = seed;
+		State s = new State(seed);
+		SimulationBoard board = boards.get(); //Scratch board reused for every simulated move of this thread's games
+		ReplayWriter.Game replay = replays == null ? null : new ReplayWriter.Game(seed);
+		//s.setObserver(new TFrame(s).renderer); //Redraws the board after every move
 		
 		while(!s.hasLost()) {
-			s.makeMove(pickMove(s, s.legalMoves()));
-			//s.draw();
-			//s.drawNext(0,0);
+			int piece = s.getNextPiece();
+			int move = pickMove(s, board, evaluator, search);
+			
+			if (replay != null) {
+				replay.recordMove(piece, PieceCatalog.moveOrient(piece, move), PieceCatalog.moveSlot(piece, move));
+			}
+			
+			s.makeMove(move);
 			
 			/*try {
 				Thread.sleep(300);
@@ -205,18 +624,55 @@ public class PlayerSkeleton {
 			}*/
 		}
 		
-		System.out.println("You have completed "+s.getRowsCleared()+" rows.");
-		
-		return s.getRowsCleared();
+		event.end(s);
+		metrics.gameFinished(s); //Played on the calling thread, not by the scheduler
+		writeReplay(replay, s);
+		return s;
 	}
 	
-	//Out of all the moves that can be made, choose the one that yields the highest reward + utility.
-	private int pickMove(State s, int[][] legalMoves) {
+	//Appends a recorded game, if any, to the replay file. Games stopped by the budget are written as they stand.
+	private void writeReplay(ReplayWriter.Game replay, State s) {
+		if (replay != null) {
+			replay.setRowsCleared(s.getRowsCleared());
+			
+			try {
+				replays.write(replay);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	//With batch evaluation off, pickMove scores the candidates one at a time with calculateUtility, looking every board
+	//up in the evaluation cache first - the way the search evaluates boards. It picks the same moves as the batch, but
+	//can be compared with it, or with the search, move for move. It applies to the tuning games as well.
+	private void setBatchEvaluation(boolean enabled) {
+		batchEvaluation = enabled;
+	}
+	
+	//Records every game played - by playGame() and by the tuning runs - to the given replay file (see ReplayWriter),
+	//replacing it.
+	private void enableReplays(String fileName) throws IOException {
+		replays = new ReplayWriter(Paths.get(fileName));
+	}
+	
+	//Out of all the moves that can be made, choose the one that yields the highest reward + utility, scored by the
+	//given evaluator - through the given search if it is not null.
+	private int pickMove(State s, SimulationBoard board, VectorEvaluator evaluator, ExpectimaxSearch search) {
+		if (search != null) {
+			return search.pickMove(evaluator, s.getField(), s.getTop(), s.getNextPiece());
+		}
+		
+		if (batchEvaluation) {
+			return GreedyPolicy.pickMove(s, board, batches.get(), evaluator.weights);
+		}
+		
+		board.load(s.getField(), s.getTop());
 		int optimalMove = 0;
 		double maxEvaluation = -Double.MAX_VALUE;
 
-		for (int i = 0; i < legalMoves.length; i++) {
-			double evaluation = simulate(s, i);
+		for (int i = 0; i < PieceCatalog.numMoves(s.getNextPiece()); i++) {
+			double evaluation = simulate(board, evaluator, s.getNextPiece(), i);
 
 			if (evaluation > maxEvaluation) {
 				maxEvaluation = evaluation;
@@ -228,117 +684,153 @@ public class PlayerSkeleton {
 	}
 	
 	//Simulates the making of a move and returns the sum of the reward and utility as a result of making that move.
-	private double simulate(State state, int move) {
-		int[][] simulatedField = copyField(state.getField());
-		int[] simulatedTop = Arrays.copyOf(state.getTop(), state.getTop().length);
-		//This also modifies simulatedField and simulatedTop.
-		double reward = makeMove(move, simulatedField, simulatedTop, state.getNextPiece());
-		double utility = calculateUtility(simulatedField, simulatedTop);
+	//The move is made in place on the scratch board and undone afterwards, so nothing is allocated.
+	private double simulate(SimulationBoard board, Evaluator evaluator, int piece, int move) {
+		double reward = board.makeMove(piece, PieceCatalog.moveOrient(piece, move), PieceCatalog.moveSlot(piece, move));
+		double utility = evaluator.evaluate(board);
+		board.undo();
 
 		return reward + utility;
 	}
 	
-	//Calculate the utility of a given state, using the linear weighted sum of feature functions.
-	private double calculateUtility(int[][] field, int[] top) {
+	//Returns the utility of the board with the current weights, from the evaluation cache if this board has been
+	//evaluated before with them.
+	@Override
+	public double evaluate(SimulationBoard board) {
+		return evaluator.evaluate(board);
+	}
+	
+	@Override
+	public double upperBound(SimulationBoard board, int placements) {
+		return evaluator.upperBound(board, placements);
+	}
+	
+	//Scores boards with one weight vector, looking them up in the shared evaluation cache under a version of its own.
+	//weightVector has one, and so has every vector of a race, so games of different vectors never share cache entries.
+	private class VectorEvaluator implements Evaluator {
+		private final double[] weights;
+		private final int version;
+		
+		VectorEvaluator(double[] weights, int version) {
+			this.weights = weights;
+			this.version = version;
+		}
+		
+		@Override
+		public double evaluate(SimulationBoard board) {
+			long key = EvaluationCache.key(board.getHash(), version);
+			double utility = evalCache.get(key);
+			
+			if (Double.isNaN(utility)) {
+				utility = calculateUtility(weights, board);
+				evalCache.put(key, utility);
+			}
+			
+			return utility;
+		}
+		
+		@Override
+		public double upperBound(SimulationBoard board, int placements) {
+			return PlayerSkeleton.this.upperBound(weights, board, placements);
+		}
+	}
+	
+	//Calculate the utility of a given state, using the linear weighted sum of feature functions. The features are 
+	//maintained incrementally by the board, so nothing here scans the field.
+	private double calculateUtility(double[] weights, SimulationBoard board) {
 		double utility = 0;
-		int[] features = new int[VECTOR_SIZE];
+		int[] top = board.getTop();
 	
 		for (int i = 0; i < State.COLS; i++) {
-			features[i] = getColHeight(top, i);
+			utility += weights[i] * getColHeight(top, i);
 		}
 	
 		for (int i = 0; i < State.COLS - 1; i++) {
-			features[State.COLS + i] = getAdjHeightDiff(top, i);
+			utility += weights[State.COLS + i] * board.getAdjHeightDiff(i);
 		}
 	
-		features[19] = getMaxColHeight(top);
-		features[20] = getNumOfHoles(field, top);
-	
-		for (int i = 0; i < VECTOR_SIZE; i++) {
-			utility += weightVector[i] * features[i];
-		}
+		utility += weights[19] * board.getMaxHeight();
+		utility += weights[20] * board.getHoles();
 	
 		return utility;
 	}
 
-	// Modified from State.java
-	// Return the number of rows cleared, -INF if the game is lost
-	private int makeMove(int move, int[][] field, int[] top, int nextPiece) {
-		int orient = State.legalMoves[nextPiece][move][State.ORIENT];
-		int slot = State.legalMoves[nextPiece][move][State.SLOT];
+	//Bounds every feature of calculateUtility over all boards that can be reached from this one by the given number of
+	//placements, and returns the largest utility those bounds allow with the given weights plus the most rows those
+	//placements can clear.
+	private double upperBound(double[] weights, SimulationBoard board, int placements) {
+		int[][] field = board.getField();
+		int[] top = board.getTop();
+		int maxCells = 4 * placements; //Squares the placements can fill
 		
-		//height if the first column makes contact
-		int height = top[slot]-pBottom[nextPiece][orient][0];
-		//for each column beyond the first in the piece
-		for(int c = 1; c < pWidth[nextPiece][orient];c++) {
-			height = Math.max(height,top[slot+c]-pBottom[nextPiece][orient][c]);
-		}
+		//Rows that could be completed - at most maxCells empty squares. A single placement can only fill open squares, but
+		//with more placements one can clear the rows covering a hole and a later one fill it, so covered squares count
+		//too.
+		int clearableRows = 0;
+		int maxTop = 0;
 		
-		//check if game ended
-		if(height+pHeight[nextPiece][orient] >= State.ROWS) {
-			return Integer.MIN_VALUE;
-		}
-		
-		//for each column in the piece - fill in the appropriate blocks
-		for(int i = 0; i < pWidth[nextPiece][orient]; i++) {
+		for (int r = 0; r < State.ROWS; r++) {
+			int empty = 0;
+			boolean open = true;
+			
+			for (int c = 0; c < State.COLS; c++) {
+				if (field[r][c] == 0) {
+					empty++;
+					open &= r >= top[c];
+				}
+			}
 			
-			//from bottom to top of brick
-			for(int h = height+pBottom[nextPiece][orient][i]; h < height+pTop[nextPiece][orient][i]; h++) {
-				field[h][i+slot] = 1;
+			if (empty <= maxCells && (open || placements > 1)) {
+				clearableRows |= 1 << r;
 			}
 		}
 		
-		//adjust top
-		for(int c = 0; c < pWidth[nextPiece][orient]; c++) {
-			top[slot+c]=height+pTop[nextPiece][orient][c];
+		for (int c = 0; c < State.COLS; c++) {
+			maxTop = Math.max(maxTop, top[c]);
 		}
 		
-		int rowsCleared = 0;
+		int maxClears = Math.min(maxCells, Integer.bitCount(clearableRows));
+		int highest = Math.min(State.ROWS - 1, maxTop + maxCells); //No column can grow past this without losing
+		double bound = maxClears;
+		int lowMax = 0;
+		int lowHoles = 0;
+		int prevLow = 0;
+		int prevHigh = 0;
 		
-		//check for full rows - starting at the top
-		for(int r = height+pHeight[nextPiece][orient]-1; r >= height; r--) {
-			//check all columns in the row
-			boolean full = true;
-			for(int c = 0; c < State.COLS; c++) {
-				if(field[r][c] == 0) {
-					full = false;
-					break;
+		for (int c = 0; c < State.COLS; c++) {
+			//The highest square that cannot be cleared survives, dropping by at most maxClears rows, and so do the
+			//holes below it
+			int survivor = top[c];
+			while (survivor > 0 && (field[survivor-1][c] == 0 || (clearableRows >>> (survivor-1) & 1) != 0)) survivor--;
+			
+			for (int r = 0; r < survivor; r++) {
+				if (field[r][c] == 0) {
+					lowHoles++;
 				}
 			}
-			//if the row was full - remove it and slide above stuff down
-			if(full) {
-				rowsCleared++;
-				//for each column
-				for(int c = 0; c < State.COLS; c++) {
-	
-					//slide down all bricks
-					for(int i = r; i < top[c]; i++) {
-						field[i][c] = field[i+1][c];
-					}
-					//lower the top
-					top[c]--;
-					while(top[c]>=1 && field[top[c]-1][c]==0)	top[c]--;
-				}
+			
+			int low = Math.max(0, survivor - maxClears);
+			int high = Math.max(top[c], highest);
+			bound += weights[c] >= 0 ? weights[c] * high : weights[c] * low;
+			
+			if (c > 0) {
+				int lowDiff = Math.max(0, Math.max(low - prevHigh, prevLow - high));
+				int highDiff = Math.max(high - prevLow, prevHigh - low);
+				double w = weights[State.COLS + c - 1];
+				bound += w >= 0 ? w * highDiff : w * lowDiff;
 			}
+			
+			lowMax = Math.max(lowMax, low);
+			prevLow = low;
+			prevHigh = high;
 		}
 		
-		return rowsCleared;
+		bound += weights[19] >= 0 ? weights[19] * Math.max(maxTop, highest) : weights[19] * lowMax;
+		bound += weights[20] >= 0 ? weights[20] * State.ROWS * State.COLS : weights[20] * lowHoles;
+		
+		return bound;
 	}
-	
-	//Copy the field (state) into another array, so that moves can be made on the new array without modifying the original
-	//array.
-	private int[][] copyField(int[][] originalField) {
-		int[][] simulatedField = new int[State.ROWS][State.COLS];
 
-		for (int i = 0; i < State.ROWS; i++) {
-			for (int j = 0; j < State.COLS; j++) {
-				simulatedField[i][j] = originalField[i][j];
-			}
-		}
-
-		return simulatedField;
-	}
-	
     //================================================================================
     // Feature functions
     //================================================================================
@@ -347,45 +839,36 @@ public class PlayerSkeleton {
 	    return top[col];
 	}
 	
-	//Returns the absolute difference between adjacent column heights.
-	private int getAdjHeightDiff(int[] top, int col) {
-	    return Math.abs(top[col] - top[col + 1]);
-	}
-	
-	private int getMaxColHeight(int[] top) {
-	    int max = 0;
-	    for (int i = 0; i < State.COLS; i++) {
-	        if (getColHeight(top, i) > max) {
-	            max = getColHeight(top, i);
-	        }
-	    }
-	    
-	    return max;
-	}
-	
-	private int getNumOfHoles(int[][] field, int[] top) {
-		int holes = 0;
-
-		for (int i = 0; i < State.COLS; i++) { 
-			int j = 0; //Row number
-			while (j < top[i]) {
-				if (field[j][i] == 0) {
-					holes++;
-				}
-				
-				j++;
-			}
-		}
-		
-		return holes;
-	}
-	
 	public static void main(String[] args) throws IOException {
 		PlayerSkeleton p = new PlayerSkeleton();
-		int numAdjustments = VECTOR_SIZE * 100; //The total number of adjustments to be made to the weight vector.  
-		int numGamesToPlay = 30; //The number of games to play for each adjustment.
-		p.improveVector(numAdjustments, numGamesToPlay);
+		int numGenerations = 50; //The number of generations of the cross-entropy method.
+		int numGamesToPlay = 30; //The number of games to play for each vector of a generation.
+		//Uncomment to stop tuning games at 20000 rows (about 5 times the current average); score.txt then holds an
+		//estimate extrapolated from the truncated games rather than an average of whole games
+		//p.setGameBudget(Integer.MAX_VALUE, 20000, Long.MAX_VALUE);
+		p.metrics.startReporter(REPORT_INTERVAL_MILLIS, System.out);
+		p.stats.register(); //See EngineStats - turn on its Sampling attribute for phase timings
+		//p.enableReplays("replays.bin"); //Uncomment to record every game played, see ReplayReader
+		//p.enableSearch(2, 50, true); p.playGame(); //Uncomment to play a single game using all cores for each move
+		//p.enableSearch(2, 50, false); //Uncomment to look one piece ahead in the tuning games too
+		//p.setBatchEvaluation(false); p.playGame(); //Uncomment to play a single game scoring moves one at a time
+		//p.improveVector(VECTOR_SIZE * 100, numGamesToPlay); //Uncomment to adjust one weight at a time instead
+		p.optimizeVector(numGenerations, numGamesToPlay);
+		p.metrics.stopReporter();
+		System.out.println(p.metrics.summary());
+		System.out.println("Racing saved " + p.gamesSaved + " games");
+		if (p.evalCache.getHits() + p.evalCache.getMisses() > 0) {
+			System.out.println("Evaluation cache: " + p.evalCache.getHits() + " hits, " + p.evalCache.getMisses()
+					+ " misses");
+		}
+		if (p.search != null) {
+			long nodes = p.search.getNodeCount() + (p.tuningSearch != p.search ? p.tuningSearch.getNodeCount() : 0);
+			System.out.println("Search: " + nodes + " moves simulated");
+		}
 		p.writeVectorToFile(FILENAME_VECTOR);
 		p.writeScoreToFile(p.maxAvgScore, FILENAME_SCORE);
+		if (p.replays != null) {
+			p.replays.close();
+		}
 	}
 }
@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.List;
+
+//A game played with the greedy policy on a fixed seed, recorded for the benchmarks and the self-checks, so that they
+//all measure and check the same positions: its pieces and moves, and the board before each of its first moves.
+public class RecordedGame {
+
+	private final List<int[][]> fields = new ArrayList<>();
+	private final List<int[]> tops = new ArrayList<>();
+	private final List<Integer> nextPieces = new ArrayList<>();
+	private final int[] pieces;
+	private final int[][] moves;
+	private final int rowsCleared;
+
+	//Plays the game on the given seed, recording the boards before its first maxPositions moves.
+	public RecordedGame(long seed, double[] weights, int maxPositions) {
+		final List<Integer> pieceList = new ArrayList<>();
+		List<int[]> moveList = new ArrayList<>();
+		final SeededPieceGenerator generator = new SeededPieceGenerator(seed);
+		State s = new State(new PieceGenerator() {
+			@Override
+			public int nextPiece() {
+				int piece = generator.nextPiece();
+				pieceList.add(piece);
+				return piece;
+			}
+		});
+		SimulationBoard board = new SimulationBoard();
+		BatchEvaluator batch = new BatchEvaluator(weights.length);
+
+		while (!s.hasLost()) {
+			int move = GreedyPolicy.pickMove(s, board, batch, weights);
+
+			if (fields.size() < maxPositions) {
+				int[][] field = new int[State.ROWS][];
+
+				for (int r = 0; r < State.ROWS; r++) {
+					field[r] = s.getField()[r].clone();
+				}
+
+				fields.add(field);
+				tops.add(s.getTop().clone());
+				nextPieces.add(s.getNextPiece());
+			}
+
+			moveList.add(s.legalMoves()[move].clone());
+			s.makeMove(move);
+		}
+
+		pieces = new int[pieceList.size()];
+
+		for (int i = 0; i < pieces.length; i++) {
+			pieces[i] = pieceList.get(i);
+		}
+
+		moves = moveList.toArray(new int[moveList.size()][]);
+		rowsCleared = s.getRowsCleared();
+	}
+
+	public int getNumPositions() {
+		return fields.size();
+	}
+
+	//The board before move number position
+	public int[][] getField(int position) {
+		return fields.get(position);
+	}
+
+	public int[] getTop(int position) {
+		return tops.get(position);
+	}
+
+	//The piece placed by move number position
+	public int getPiece(int position) {
+		return nextPieces.get(position);
+	}
+
+	//Every piece the game drew, including the one it lost on, to be replayed with a SequencePieceGenerator
+	public int[] getPieces() {
+		return pieces;
+	}
+
+	//Every move of the game, as (orient, slot)
+	public int[][] getMoves() {
+		return moves;
+	}
+
+	public int getRowsCleared() {
+		return rowsCleared;
+	}
+}
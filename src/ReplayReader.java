@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+//Reads a replay file written by ReplayWriter. The file is memory-mapped, so only the pages that are actually read are
+//loaded, and opening it only walks the game headers, jumping over the moves, to find where each game starts. Any move
+//of any game can then be read directly, and any turn of a game can be reconstructed by re-simulating the game with
+//State up to that turn.
+//
+//A file larger than 2 GB cannot be mapped as a single buffer and is rejected.
+public class ReplayReader {
+	
+	private final MappedByteBuffer buffer;
+	private final int[] offsets; //Where the header of each game starts
+	
+	public ReplayReader(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Replay file larger than 2 GB: " + path);
+			}
+			
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close(); //The mapping stays valid after the channel is closed
+		}
+		
+		int[] found = new int[16];
+		int numGames = 0;
+		int offset = 0;
+		
+		while (offset < buffer.limit()) {
+			if (offset + ReplayWriter.HEADER_SIZE > buffer.limit() || buffer.getInt(offset) != ReplayWriter.MAGIC
+					|| buffer.get(offset + 4) != ReplayWriter.VERSION) {
+				throw new IOException("Corrupt or unsupported replay at byte " + offset + " of " + path);
+			}
+			
+			if (numGames == found.length) {
+				found = Arrays.copyOf(found, numGames * 2);
+			}
+			
+			found[numGames++] = offset;
+			offset += ReplayWriter.HEADER_SIZE + numMovesAt(offset) * bytesPerMoveAt(offset);
+		}
+		
+		offsets = Arrays.copyOf(found, numGames);
+	}
+	
+    //================================================================================
+    // Games
+    //================================================================================
+	
+	public int getNumGames() {
+		return offsets.length;
+	}
+	
+	//True if the pieces of the game follow from its seed, false if they were recorded with its moves
+	public boolean isSeeded(int game) {
+		return buffer.get(offsets[game] + 5) == ReplayWriter.SEEDED;
+	}
+	
+	public long getSeed(int game) {
+		return buffer.getLong(offsets[game] + 6);
+	}
+	
+	public int getNumMoves(int game) {
+		return numMovesAt(offsets[game]);
+	}
+	
+	public int getRowsCleared(int game) {
+		return buffer.getInt(offsets[game] + 18);
+	}
+	
+	public int getOrient(int game, int move) {
+		return (packedMove(game, move) >>> 4) & 3;
+	}
+	
+	public int getSlot(int game, int move) {
+		return packedMove(game, move) & 15;
+	}
+	
+	//The piece played on the given move of a SEQUENCE game
+	public int getPiece(int game, int move) {
+		if (isSeeded(game)) {
+			throw new IllegalStateException("Pieces of seeded games are not stored - reconstruct the game instead");
+		}
+		
+		return packedMove(game, move) >>> 6;
+	}
+	
+	//Replays the first numMoves moves of the game on a fresh State and returns it, showing the board as it was before
+	//move number numMoves.
+	public State reconstruct(int game, int numMoves) {
+		State s;
+		
+		if (isSeeded(game)) {
+			s = new State(getSeed(game));
+		} else {
+			//One piece per move, then the piece drawn after the last move, which was never played
+			int[] pieces = new int[getNumMoves(game) + 1];
+			
+			for (int i = 0; i < getNumMoves(game); i++) {
+				pieces[i] = getPiece(game, i);
+			}
+			
+			s = new State(new SequencePieceGenerator(pieces));
+		}
+		
+		for (int i = 0; i < numMoves && !s.hasLost(); i++) {
+			s.makeMove(getOrient(game, i), getSlot(game, i));
+		}
+		
+		return s;
+	}
+	
+	private int numMovesAt(int offset) {
+		return buffer.getInt(offset + 14);
+	}
+	
+	private int bytesPerMoveAt(int offset) {
+		return buffer.get(offset + 5) == ReplayWriter.SEEDED ? 1 : 2;
+	}
+	
+	private int packedMove(int game, int move) {
+		int offset = offsets[game];
+		int position = offset + ReplayWriter.HEADER_SIZE + move * bytesPerMoveAt(offset);
+		
+		if (move < 0 || move >= numMovesAt(offset)) {
+			throw new IndexOutOfBoundsException("Move " + move + " of a game of " + numMovesAt(offset) + " moves");
+		}
+		
+		return bytesPerMoveAt(offset) == 1 ? buffer.get(position) & 0xFF : buffer.getShort(position) & 0xFFFF;
+	}
+	
+    //================================================================================
+    // Main
+    //================================================================================
+	
+	//Usage: ReplayReader file [game turn]
+	//Lists the games of the file, or prints the board of the given game before the given turn.
+	public static void main(String[] args) throws IOException {
+		ReplayReader reader = new ReplayReader(Paths.get(args[0]));
+		
+		if (args.length < 3) {
+			for (int g = 0; g < reader.getNumGames(); g++) {
+				System.out.printf("Game %d: %s, %d moves, %d rows%n", g,
+						reader.isSeeded(g) ? "seed " + reader.getSeed(g) : "recorded pieces", reader.getNumMoves(g),
+						reader.getRowsCleared(g));
+			}
+			
+			return;
+		}
+		
+		State s = reader.reconstruct(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		int[][] field = s.getField();
+		
+		for (int r = State.ROWS - 1; r >= 0; r--) {
+			StringBuilder sb = new StringBuilder("|");
+			
+			for (int c = 0; c < State.COLS; c++) {
+				sb.append(field[r][c] == 0 ? ' ' : '#');
+			}
+			
+			System.out.println(sb.append('|'));
+		}
+		
+		System.out.println("Turn " + s.getTurnNumber() + ", " + s.getRowsCleared() + " rows, next piece "
+				+ s.getNextPiece());
+	}
+}
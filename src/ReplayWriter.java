@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+//Writes games to a compact binary replay file, to be read back with ReplayReader. A file is a sequence of games, each
+//a fixed HEADER_SIZE-byte header followed by its moves:
+//
+//  int   MAGIC
+//  byte  VERSION
+//  byte  SEEDED or SEQUENCE
+//  long  seed of the piece sequence (SEEDED), 0 otherwise
+//  int   number of moves, including the move that lost the game
+//  int   rows cleared
+//
+//A move of a SEEDED game takes one byte, orient << 4 | slot, since its pieces follow from the seed. A move of a
+//SEQUENCE game takes two, piece << 6 | orient << 4 | slot, big-endian. A million-move game therefore takes 1 MB.
+//
+//Each game is recorded in memory by a Game and written in one piece, so any number of threads can record their own
+//games and write them to the same file. Writes go through a FileChannel.
+public class ReplayWriter implements AutoCloseable {
+	
+    //================================================================================
+    // Constants
+    //================================================================================
+	
+	public static final int MAGIC = 0x54524C59; //"TRLY"
+	public static final byte VERSION = 1;
+	public static final byte SEEDED = 0;
+	public static final byte SEQUENCE = 1;
+	public static final int HEADER_SIZE = 4 + 1 + 1 + 8 + 4 + 4;
+	
+    //================================================================================
+    // Games
+    //================================================================================
+	
+	//The moves of one game, recorded as it is played. Not thread-safe - a Game belongs to the thread playing it.
+	public static class Game {
+		private final byte mode;
+		private final long seed;
+		private byte[] moves = new byte[1024];
+		private int size = 0;
+		private int numMoves = 0;
+		private int rowsCleared = 0;
+		
+		//A game whose pieces come from new State(seed)
+		public Game(long seed) {
+			this.mode = SEEDED;
+			this.seed = seed;
+		}
+		
+		//A game whose pieces are recorded with every move
+		public Game() {
+			this.mode = SEQUENCE;
+			this.seed = 0;
+		}
+		
+		//Records a move: the piece played (only kept for SEQUENCE games), and where it was played.
+		public void recordMove(int piece, int orient, int slot) {
+			if (size + 2 > moves.length) {
+				moves = Arrays.copyOf(moves, moves.length * 2);
+			}
+			
+			int packed = piece << 6 | orient << 4 | slot;
+			
+			if (mode == SEQUENCE) {
+				moves[size++] = (byte) (packed >>> 8);
+				moves[size++] = (byte) packed;
+			} else {
+				moves[size++] = (byte) (packed & 0x3F);
+			}
+			numMoves++;
+		}
+		
+		public void setRowsCleared(int rowsCleared) {
+			this.rowsCleared = rowsCleared;
+		}
+		
+		public int getNumMoves() {
+			return numMoves;
+		}
+	}
+	
+    //================================================================================
+    // Writing
+    //================================================================================
+	
+	private final FileChannel channel;
+	private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	
+	//Creates the file, replacing any existing one.
+	public ReplayWriter(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+	
+	//Appends a finished game to the file.
+	public synchronized void write(Game game) throws IOException {
+		header.clear();
+		header.putInt(MAGIC).put(VERSION).put(game.mode).putLong(game.seed).putInt(game.numMoves)
+				.putInt(game.rowsCleared);
+		header.flip();
+		ByteBuffer moves = ByteBuffer.wrap(game.moves, 0, game.size);
+		
+		while (header.hasRemaining() || moves.hasRemaining()) {
+			channel.write(new ByteBuffer[] {header, moves});
+		}
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+}
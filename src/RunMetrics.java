@@ -0,0 +1,137 @@
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Counts the games, moves and rows of a run and the distribution of its scores. Game threads call gameFinished(...)
+//once per game, which only increments LongAdders and a ScoreHistogram, so they never contend on a lock or wait on
+//output. A reporter thread started with startReporter(...) prints a summary line at a fixed interval instead, with
+//the throughput since the previous line and the score percentiles of every game so far.
+public class RunMetrics {
+
+	private final long startTime = System.nanoTime();
+	private final LongAdder games = new LongAdder();
+	private final LongAdder moves = new LongAdder();
+	private final LongAdder lines = new LongAdder();
+	private final ScoreHistogram scores = new ScoreHistogram();
+
+	private ScheduledExecutorService reporter = null;
+	//Read and written by the reporter thread only
+	private long lastReportTime = startTime;
+	private long lastReportGames = 0;
+	private long lastReportMoves = 0;
+
+    //================================================================================
+    // Recording
+    //================================================================================
+
+	//Records a finished game, whose score is its number of rows cleared.
+	public void gameFinished(State s) {
+		games.increment();
+		moves.add(s.getTurnNumber());
+		lines.add(s.getRowsCleared());
+		scores.record(s.getRowsCleared());
+	}
+
+    //================================================================================
+    // Getters
+    //================================================================================
+
+	public long getGames() {
+		return games.sum();
+	}
+
+	public long getMoves() {
+		return moves.sum();
+	}
+
+	public long getLines() {
+		return lines.sum();
+	}
+
+	public ScoreHistogram getScores() {
+		return scores;
+	}
+
+	//Games finished per second since the metrics were created
+	public double getGamesPerSecond() {
+		return games.sum() / elapsedSeconds(startTime, System.nanoTime());
+	}
+
+	public double getMovesPerSecond() {
+		return moves.sum() / elapsedSeconds(startTime, System.nanoTime());
+	}
+
+	private static double elapsedSeconds(long from, long to) {
+		return Math.max(1e-9, (to - from) / 1e9);
+	}
+
+    //================================================================================
+    // Reporting
+    //================================================================================
+
+	//One line with the totals, the average throughput and the score percentiles of the run so far
+	public String summary() {
+		return String.format("%.0fs: %d games (%.1f games/s), %d moves (%.0f/s), %d rows, %s",
+				elapsedSeconds(startTime, System.nanoTime()), getGames(), getGamesPerSecond(), getMoves(),
+				getMovesPerSecond(), getLines(), percentiles());
+	}
+
+	private String percentiles() {
+		if (games.sum() == 0) {
+			return "no scores yet";
+		}
+
+		return String.format("score p10 %d, p50 %d, p90 %d, p99 %d, max %d", scores.getPercentile(10),
+				scores.getPercentile(50), scores.getPercentile(90), scores.getPercentile(99), scores.getMax());
+	}
+
+	//Prints a line to out every intervalMillis from a daemon thread, with the throughput over the last interval.
+	//Does nothing if a reporter is already running.
+	public synchronized void startReporter(final long intervalMillis, final PrintStream out) {
+		if (reporter != null) {
+			return;
+		}
+
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "metrics-reporter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		reporter.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				out.println(intervalReport());
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private String intervalReport() {
+		long now = System.nanoTime();
+		long g = games.sum();
+		long m = moves.sum();
+		double seconds = elapsedSeconds(lastReportTime, now);
+		String report = String.format("%.0fs: %d games (%.1f games/s), %d moves (%.0f/s), %d rows, %s",
+				elapsedSeconds(startTime, now), g, (g - lastReportGames) / seconds, m, (m - lastReportMoves) / seconds,
+				lines.sum(), percentiles());
+		lastReportTime = now;
+		lastReportGames = g;
+		lastReportMoves = m;
+
+		return report;
+	}
+
+	//Stops the reporter thread, if one is running.
+	public synchronized void stopReporter() {
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+	}
+}
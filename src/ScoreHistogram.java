@@ -0,0 +1,121 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongBinaryOperator;
+
+//A lock-free histogram of non-negative scores, laid out like an HDR histogram: values below SUB_BUCKETS are counted
+//exactly, and every power-of-two range above that is split into SUB_BUCKETS / 2 equal buckets, so a value is always
+//counted with a relative error below 2 / SUB_BUCKETS (1.6%) and the whole int range fits in a few thousand counters.
+//Recording a value is a bit scan and one atomic increment, so any number of game threads can record at once.
+//
+//Percentiles are read from the counts without stopping the writers, so they may miss values recorded at the same
+//time, but never see a torn count.
+public class ScoreHistogram {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+	//Exact buckets for 0 to SUB_BUCKETS - 1, then one set of half buckets per power of two up to 2^31
+	private static final int NUM_BUCKETS = SUB_BUCKETS + (31 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		@Override
+		public long applyAsLong(long a, long b) {
+			return Math.max(a, b);
+		}
+	};
+
+    //================================================================================
+    // Fields
+    //================================================================================
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+    //================================================================================
+    // Recording
+    //================================================================================
+
+	public void record(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative score " + value);
+		}
+
+		counts.incrementAndGet(bucket(value));
+		max.accumulate(value);
+	}
+
+	//Values below SUB_BUCKETS have a bucket each. Above that, the bucket is chosen by the value's highest bit and the
+	//SUB_BUCKET_BITS - 1 bits after it.
+	private static int bucket(int value) {
+		if (value < SUB_BUCKETS) {
+			return value;
+		}
+
+		int shift = 31 - Integer.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (value >>> shift) - HALF_SUB_BUCKETS;
+	}
+
+	//Smallest value counted in the given bucket
+	private static long lowestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		return (long) ((bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS) << shift;
+	}
+
+    //================================================================================
+    // Statistics
+    //================================================================================
+
+	public long getCount() {
+		long count = 0;
+
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			count += counts.get(i);
+		}
+
+		return count;
+	}
+
+	//Exact maximum of the values recorded, 0 if there are none
+	public long getMax() {
+		return max.get();
+	}
+
+	//The value below which the given percentage (0 to 100) of the recorded values lie, to within the precision of its
+	//bucket, or 0 if nothing was recorded. Returns the middle of the bucket the percentile falls into.
+	public long getPercentile(double percentile) {
+		long[] snapshot = new long[NUM_BUCKETS];
+		long total = 0;
+
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+		long seen = 0;
+
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += snapshot[i];
+
+			if (seen >= rank) {
+				long low = lowestValue(i);
+				long high = i + 1 < NUM_BUCKETS ? lowestValue(i + 1) : (long) Integer.MAX_VALUE + 1;
+				return Math.min(getMax(), (low + high - 1) / 2);
+			}
+		}
+
+		return getMax();
+	}
+}
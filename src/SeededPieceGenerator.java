@@ -0,0 +1,30 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+//Draws pieces uniformly at random from a per-game SplittableRandom. Each game owns its generator, so concurrent games
+//never contend on a shared seed, and a game can be reproduced exactly by constructing a generator with the same seed.
+//Not thread-safe - a generator must only be used by the game that owns it.
+public class SeededPieceGenerator implements PieceGenerator {
+	
+	private final long seed;
+	private final SplittableRandom random;
+	
+	//Picks a fresh seed, which can be read back with getSeed() to replay the game later.
+	public SeededPieceGenerator() {
+		this(ThreadLocalRandom.current().nextLong());
+	}
+	
+	public SeededPieceGenerator(long seed) {
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	@Override
+	public int nextPiece() {
+		return random.nextInt(State.N_PIECES);
+	}
+}
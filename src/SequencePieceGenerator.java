@@ -0,0 +1,30 @@
+//Replays an exact, pre-recorded sequence of pieces.
+public class SequencePieceGenerator implements PieceGenerator {
+	
+	private final int[] pieces;
+	private int index = 0;
+	
+	public SequencePieceGenerator(int[] pieces) {
+		for (int piece : pieces) {
+			if (piece < 0 || piece >= State.N_PIECES) {
+				throw new IllegalArgumentException("Invalid piece ID: " + piece);
+			}
+		}
+		
+		this.pieces = pieces.clone();
+	}
+	
+	//Returns the number of pieces handed out so far.
+	public int getPosition() {
+		return index;
+	}
+	
+	@Override
+	public int nextPiece() {
+		if (index >= pieces.length) {
+			throw new IllegalStateException("Piece sequence exhausted after " + pieces.length + " pieces");
+		}
+		
+		return pieces[index++];
+	}
+}
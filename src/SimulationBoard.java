@@ -0,0 +1,340 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+//A reusable scratch board for simulating candidate moves without allocating. A move is applied in place with
+//makeMove(...), which records every square it overwrites in an undo journal, and undo() puts the board back exactly
+//as it was. One SimulationBoard is meant to be owned by a single game thread and reused for every candidate of every
+//turn of that game.
+//
+//Moves can be nested up to MAX_DEPTH deep for lookahead search: each makeMove(...) pushes a frame onto the journal
+//and each undo() pops the most recent one, so every makeMove(...) must be paired with exactly one undo().
+//
+//The board also keeps a Zobrist hash of which squares are filled, updated on every square it changes, so that boards
+//reached by different moves can be recognised as identical (see EvaluationCache).
+//
+//Finally, it keeps the board features PlayerSkeleton evaluates - holes, maximum height and the differences between
+//adjacent column heights - as running aggregates. A placement only updates the columns it touched; a line clear, which
+//moves every column, recomputes them from the tops in O(COLS). Holes never need a scan, since a column has
+//top - (filled squares) of them, and the filled squares per column are counted as they are added and cleared.
+public class SimulationBoard {
+
+    //================================================================================
+    // Constants
+    //================================================================================
+
+	//A move writes at most 4 squares for the piece, then each of up to 4 cleared rows can slide every square below
+	//the top of each column down by one.
+	private static final int MAX_MOVE_JOURNAL_SIZE = 4 + 4 * State.ROWS * State.COLS;
+
+	//The most moves that can be made on the board before they are undone
+	public static final int MAX_DEPTH = 8;
+
+	//A random key for each square (row * COLS + col); the hash of a board is the XOR of the keys of its filled squares
+	private static final long[] ZOBRIST_KEYS = new long[State.ROWS * State.COLS];
+
+	static {
+		SplittableRandom random = new SplittableRandom(3243);
+
+		for (int i = 0; i < ZOBRIST_KEYS.length; i++) {
+			ZOBRIST_KEYS[i] = random.nextLong();
+		}
+	}
+
+    //================================================================================
+    // Fields
+    //================================================================================
+
+	private final int[][] field = new int[State.ROWS][State.COLS];
+	private final int[] top = new int[State.COLS];
+	//bit r of cols[c] is set if field[r][c] is filled, for FeatureKernel
+	private final int[] cols = new int[State.COLS];
+
+	//Undo journal - the squares (row * COLS + col) overwritten by the moves made so far, and their previous values
+	private final int[] journalSquares = new int[MAX_DEPTH * MAX_MOVE_JOURNAL_SIZE];
+	private final int[] journalValues = new int[MAX_DEPTH * MAX_MOVE_JOURNAL_SIZE];
+	private int journalSize = 0;
+
+	//One frame per move made so far - where its journal entries start, and the top, hash and features from before it
+	private int depth = 0;
+	private final int[] frameStart = new int[MAX_DEPTH];
+	private final int[][] savedTop = new int[MAX_DEPTH][State.COLS];
+	private final int[][] savedCols = new int[MAX_DEPTH][State.COLS];
+	private final long[] savedHash = new long[MAX_DEPTH];
+	private final int[][] savedFilled = new int[MAX_DEPTH][State.COLS];
+	private final int[][] savedAdjHeightDiff = new int[MAX_DEPTH][State.COLS - 1];
+	private final int[] savedMaxHeight = new int[MAX_DEPTH];
+	private final int[] savedHoles = new int[MAX_DEPTH];
+	private final int[] savedBumpiness = new int[MAX_DEPTH];
+	private final int[] savedLastLandingHeight = new int[MAX_DEPTH];
+	private final int[] savedLastErodedCells = new int[MAX_DEPTH];
+
+	private long hash = 0;
+
+	//Running aggregates of the features
+	private final int[] filled = new int[State.COLS]; //Filled squares in each column
+	private final int[] adjHeightDiff = new int[State.COLS - 1]; //|top[c] - top[c+1]|
+	private int maxHeight = 0;
+	private int holes = 0;
+	private int bumpiness = 0; //Sum of adjHeightDiff
+
+	//Features of the last move made, 0 if none
+	private int lastLandingHeight = 0; //Height of the middle of the piece, in the Dellacherie sense, in half rows
+	private int lastErodedCells = 0; //Rows cleared * squares of the piece in those rows
+
+    //================================================================================
+    // Getters
+    //================================================================================
+
+	public int[][] getField() {
+		return field;
+	}
+
+	public int[] getTop() {
+		return top;
+	}
+
+	public int[] getColumns() {
+		return cols;
+	}
+
+	//Zobrist hash of the filled squares of the board
+	public long getHash() {
+		return hash;
+	}
+
+	//Number of empty squares below the top of their column
+	public int getHoles() {
+		return holes;
+	}
+
+	public int getHoles(int col) {
+		return top[col] - filled[col];
+	}
+
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+	//Absolute difference between the heights of columns col and col + 1
+	public int getAdjHeightDiff(int col) {
+		return adjHeightDiff[col];
+	}
+
+	//Sum of the differences between adjacent column heights
+	public int getBumpiness() {
+		return bumpiness;
+	}
+
+	//Twice the Dellacherie landing height - the landing row plus (piece height - 1) / 2 - so that it stays an integer
+	//without rounding away the half row of pieces of even height, such as the O and the vertical I
+	public int getLastLandingHeight() {
+		return lastLandingHeight;
+	}
+
+	public int getLastErodedCells() {
+		return lastErodedCells;
+	}
+
+    //================================================================================
+    // Simulation
+    //================================================================================
+
+	//Copies the given board into this one and clears the journal, discarding any moves that were not undone. This is
+	//done once per turn, before the candidate moves are simulated.
+	public void load(int[][] originalField, int[] originalTop) {
+		for (int i = 0; i < State.ROWS; i++) {
+			System.arraycopy(originalField[i], 0, field[i], 0, State.COLS);
+		}
+
+		System.arraycopy(originalTop, 0, top, 0, State.COLS);
+		journalSize = 0;
+		depth = 0;
+		hash = 0;
+
+		Arrays.fill(filled, 0);
+		Arrays.fill(cols, 0);
+		lastLandingHeight = 0;
+		lastErodedCells = 0;
+
+		for (int i = 0; i < State.ROWS; i++) {
+			for (int j = 0; j < State.COLS; j++) {
+				if (field[i][j] != 0) {
+					hash ^= ZOBRIST_KEYS[i * State.COLS + j];
+					filled[j]++;
+					cols[j] |= 1 << i;
+				}
+			}
+		}
+
+		recomputeFeatures();
+	}
+
+	//Applies a move in place, journaling every square it changes so that undo() can revert it. A lost move changes
+	//nothing, but must still be undone.
+	//Modified from State.java
+	//Return the number of rows cleared, Integer.MIN_VALUE if the game is lost (in which case nothing is changed)
+	public int makeMove(int piece, int orient, int slot) {
+		int o = PieceCatalog.orientIndex(piece, orient);
+		int pieceHeight = PieceCatalog.height(o);
+
+		if (depth == MAX_DEPTH) {
+			throw new IllegalStateException("More than " + MAX_DEPTH + " moves made without undo()");
+		}
+
+		frameStart[depth] = journalSize;
+		System.arraycopy(top, 0, savedTop[depth], 0, State.COLS);
+		System.arraycopy(cols, 0, savedCols[depth], 0, State.COLS);
+		savedHash[depth] = hash;
+		System.arraycopy(filled, 0, savedFilled[depth], 0, State.COLS);
+		System.arraycopy(adjHeightDiff, 0, savedAdjHeightDiff[depth], 0, State.COLS - 1);
+		savedMaxHeight[depth] = maxHeight;
+		savedHoles[depth] = holes;
+		savedBumpiness[depth] = bumpiness;
+		savedLastLandingHeight[depth] = lastLandingHeight;
+		savedLastErodedCells[depth] = lastErodedCells;
+		depth++;
+
+		//height at which the piece makes contact
+		int height = PieceCatalog.landingHeight(top, o, slot);
+
+		//check if game ended
+		if(height+pieceHeight >= State.ROWS) {
+			return Integer.MIN_VALUE;
+		}
+
+		lastLandingHeight = 2 * height + pieceHeight - 1;
+		lastErodedCells = 0;
+
+		//for each row of the piece - fill in the blocks set in its mask
+		for(int h = 0; h < pieceHeight; h++) {
+			for(int mask = PieceCatalog.rowMask(o, slot, h); mask != 0; mask &= mask-1) {
+				set(height+h, Integer.numberOfTrailingZeros(mask), 1);
+			}
+		}
+
+		//adjust top, and the features of the columns it changed
+		int width = PieceCatalog.width(o);
+
+		for(int c = 0; c < width; c++) {
+			holes -= top[slot+c] - filled[slot+c];
+		}
+
+		PieceCatalog.updateTop(top, o, slot, height);
+
+		for(int c = 0; c < width; c++) {
+			filled[slot+c] += PieceCatalog.top(o, c) - PieceCatalog.bottom(o, c);
+			holes += top[slot+c] - filled[slot+c];
+			maxHeight = Math.max(maxHeight, top[slot+c]);
+		}
+
+		updateAdjHeightDiffs(Math.max(0, slot-1), Math.min(State.COLS-2, slot+width-1));
+
+		int rowsCleared = 0;
+
+		//check for full rows - starting at the top
+		for(int r = height+pieceHeight-1; r >= height; r--) {
+			//check all columns in the row
+			boolean full = true;
+			for(int c = 0; c < State.COLS; c++) {
+				if(field[r][c] == 0) {
+					full = false;
+					break;
+				}
+			}
+			//if the row was full - remove it and slide above stuff down
+			if(full) {
+				rowsCleared++;
+				lastErodedCells += Integer.bitCount(PieceCatalog.rowMask(o, slot, r-height));
+				//for each column
+				for(int c = 0; c < State.COLS; c++) {
+
+					//slide down all bricks
+					for(int i = r; i < top[c]; i++) {
+						set(i, c, field[i+1][c]);
+					}
+					//lower the top
+					top[c]--;
+					while(top[c]>=1 && field[top[c]-1][c]==0)	top[c]--;
+				}
+			}
+		}
+
+		//a clear takes one square from every column and can lower every top, so recompute from the tops
+		if(rowsCleared > 0) {
+			for(int c = 0; c < State.COLS; c++) {
+				filled[c] -= rowsCleared;
+			}
+
+			recomputeFeatures();
+		}
+
+		lastErodedCells *= rowsCleared;
+
+		return rowsCleared;
+	}
+
+	//Recomputes every feature from top and filled, in O(COLS).
+	private void recomputeFeatures() {
+		maxHeight = 0;
+		holes = 0;
+		bumpiness = 0;
+
+		for (int c = 0; c < State.COLS; c++) {
+			maxHeight = Math.max(maxHeight, top[c]);
+			holes += top[c] - filled[c];
+		}
+
+		for (int c = 0; c < State.COLS - 1; c++) {
+			adjHeightDiff[c] = Math.abs(top[c] - top[c+1]);
+			bumpiness += adjHeightDiff[c];
+		}
+	}
+
+	//Recomputes the differences between adjacent column heights for the pairs (from, from + 1) to (to, to + 1), and
+	//adjusts the bumpiness by how much they changed.
+	private void updateAdjHeightDiffs(int from, int to) {
+		for (int c = from; c <= to; c++) {
+			int diff = Math.abs(top[c] - top[c+1]);
+			bumpiness += diff - adjHeightDiff[c];
+			adjHeightDiff[c] = diff;
+		}
+	}
+
+	//Reverts the most recent makeMove(...) that has not been undone yet, replaying its journal entries backwards.
+	public void undo() {
+		if (depth == 0) {
+			throw new IllegalStateException("No move to undo");
+		}
+
+		depth--;
+
+		for (int i = journalSize - 1; i >= frameStart[depth]; i--) {
+			field[journalSquares[i] / State.COLS][journalSquares[i] % State.COLS] = journalValues[i];
+		}
+
+		journalSize = frameStart[depth];
+		System.arraycopy(savedTop[depth], 0, top, 0, State.COLS);
+		System.arraycopy(savedCols[depth], 0, cols, 0, State.COLS);
+		hash = savedHash[depth];
+		System.arraycopy(savedFilled[depth], 0, filled, 0, State.COLS);
+		System.arraycopy(savedAdjHeightDiff[depth], 0, adjHeightDiff, 0, State.COLS - 1);
+		maxHeight = savedMaxHeight[depth];
+		holes = savedHoles[depth];
+		bumpiness = savedBumpiness[depth];
+		lastLandingHeight = savedLastLandingHeight[depth];
+		lastErodedCells = savedLastErodedCells[depth];
+	}
+
+	private void set(int row, int col, int value) {
+		journalSquares[journalSize] = row * State.COLS + col;
+		journalValues[journalSize] = field[row][col];
+		journalSize++;
+
+		if ((field[row][col] == 0) != (value == 0)) {
+			hash ^= ZOBRIST_KEYS[row * State.COLS + col];
+			cols[col] ^= 1 << row;
+		}
+
+		field[row][col] = value;
+	}
+}
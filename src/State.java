@@ -1,8 +1,5 @@
-import java.awt.Color;
-
-
-
-
+//The game engine. It has no dependency on AWT or Swing, so it can run on headless machines; a StateRenderer can be
+//attached as its observer to draw the board after every move.
 public class State {
 	public static final int COLS = 10;
 	public static final int ROWS = 21;
@@ -10,7 +7,8 @@ public class State {
 
 	public boolean lost = false;
 	
-	public TLabel label;
+	//notified after every move, null if nothing is watching the game
+	private StateObserver observer = null;
 	
 	//current turn
 	private int turn = 0;
@@ -21,16 +19,21 @@ public class State {
 	//top row+1 of each column
 	//0 means empty
 	private int[] top = new int[COLS];
+	//each column as a bitmask of its filled squares - bit r is set if field[r][c] is not 0
+	private int[] cols = new int[COLS];
 	
 	
 	//number of next piece
 	protected int nextPiece;
 	
+	//where the pieces come from
+	private final PieceGenerator pieceGenerator;
+	
 	
 	
 	// all legal moves - first index is piece type - second index is move index -
 	// third index describes the orientation or slot (position) of the corresponding move
-	protected static int[][][] legalMoves = new int[N_PIECES][][];
+	private static final int[][][] legalMoves = new int[N_PIECES][][];
 	
 	//indices for legalMoves
 	public static final int ORIENT = 0;
@@ -58,11 +61,12 @@ public class State {
 	//
 	// index 6: weird shape 2 i.e. xx
 	//                              xx
-	protected static int[] pOrients = {1,2,4,4,4,2,2};
+	private static final int[] pOrients = {1,2,4,4,4,2,2};
 	
 	//the next several arrays define the piece vocabulary in detail
+	//they must never be modified - PieceCatalog flattens them once and shares them between all games
 	//width of the pieces [piece ID][orientation]
-	protected static int[][] pWidth = {
+	private static final int[][] pWidth = {
 			{2},
 			{1,4},
 			{2,3,2,3},
@@ -72,7 +76,7 @@ public class State {
 			{3,2}
 	};
 	//height of the pieces [piece ID][orientation]
-	private static int[][] pHeight = {
+	private static final int[][] pHeight = {
 			{2},
 			{4,1},
 			{3,2,3,2},
@@ -81,7 +85,7 @@ public class State {
 			{2,3},
 			{2,3}
 	};
-	private static int[][][] pBottom = {
+	private static final int[][][] pBottom = {
 		{{0,0}},
 		{{0},{0,0,0,0}},
 		{{0,0},{0,1,1},{2,0},{0,0,0}},
@@ -90,7 +94,7 @@ public class State {
 		{{0,0,1},{1,0}},
 		{{1,0,0},{0,1}}
 	};
-	private static int[][][] pTop = {
+	private static final int[][][] pTop = {
 		{{2,2}},
 		{{4},{1,1,1,1}},
 		{{3,1},{2,2,2},{3,3},{1,1,2}},
@@ -102,7 +106,8 @@ public class State {
 	
 	//initialize legalMoves - for each piece, determine the value of n, where n is the number of possible
 	//moves. For each move, populate legalMoves with information on its corresponding orientation and slot.
-	{
+	//This runs once when the class is loaded, so that the table is ready for BitboardState as well.
+	static {
 		//for each piece type
 		for(int i = 0; i < N_PIECES; i++) {
 			//figure number of legal moves
@@ -135,25 +140,56 @@ public class State {
 	public int[] getTop() {
 		return top;
 	}
+	
+	public int[] getColumns() {
+		return cols;
+	}
 
+    //The piece tables are returned as copies, so that no caller can modify the ones every game shares. Code that reads
+    //them per move should use PieceCatalog instead.
     public static int[] getpOrients() {
-        return pOrients;
+        return pOrients.clone();
     }
     
     public static int[][] getpWidth() {
-        return pWidth;
+        return copy(pWidth);
     }
 
     public static int[][] getpHeight() {
-        return pHeight;
+        return copy(pHeight);
     }
 
     public static int[][][] getpBottom() {
-        return pBottom;
+        return copy(pBottom);
     }
 
     public static int[][][] getpTop() {
-        return pTop;
+        return copy(pTop);
+    }
+
+    //The legal moves of the given piece, in the order their indices refer to - see legalMoves()
+    public static int[][] getLegalMoves(int piece) {
+        return copy(legalMoves[piece]);
+    }
+
+    private static int[][] copy(int[][] table) {
+        int[][] result = new int[table.length][];
+
+        for (int i = 0; i < table.length; i++) {
+            result[i] = table[i].clone();
+        }
+
+        return result;
+    }
+
+    private static int[][][] copy(int[][][] table) {
+        int[][][] result = new int[table.length][][];
+
+        for (int i = 0; i < table.length; i++) {
+            result[i] = copy(table[i]);
+        }
+
+        return result;
     }
 
 
@@ -175,23 +211,33 @@ public class State {
 	
 	
 	
-	//constructor
+	//constructor - pieces are drawn from a freshly seeded generator
 	public State() {
+		this(new SeededPieceGenerator());
+	}
+	
+	//constructor - the same seed always gives the same sequence of pieces
+	public State(long seed) {
+		this(new SeededPieceGenerator(seed));
+	}
+	
+	//constructor - pieces are drawn from the given generator, e.g. a SequencePieceGenerator to replay a game
+	public State(PieceGenerator pieceGenerator) {
+		this.pieceGenerator = pieceGenerator;
 		nextPiece = randomPiece();
-
 	}
 	
 	//random integer, returns 0-6
 	private int randomPiece() {
-		return (int)(Math.random()*N_PIECES);
+		return pieceGenerator.nextPiece();
 	}
 	
 
 
 	
-	//gives legal moves for 
+	//gives legal moves for the next piece - a fresh copy, so that changing it cannot affect any other game
 	public int[][] legalMoves() {
-		return legalMoves[nextPiece];
+		return PieceCatalog.legalMoves(nextPiece);
 	}
 	
 	//make a move based on the move index - its order in the legalMoves list
@@ -207,38 +253,34 @@ public class State {
 	//returns false if you lose - true otherwise
 	public boolean makeMove(int orient, int slot) {
 		turn++;
-		//height if the first column makes contact
-		int height = top[slot]-pBottom[nextPiece][orient][0];
-		//for each column beyond the first in the piece
-		for(int c = 1; c < pWidth[nextPiece][orient];c++) {
-			height = Math.max(height,top[slot+c]-pBottom[nextPiece][orient][c]);
-		}
+		int o = PieceCatalog.orientIndex(nextPiece, orient);
+		int pieceHeight = PieceCatalog.height(o);
+		//height at which the piece makes contact
+		int height = PieceCatalog.landingHeight(top, o, slot);
 		
 		//check if game ended
-		if(height+pHeight[nextPiece][orient] >= ROWS) {
+		if(height+pieceHeight >= ROWS) {
 			lost = true;
+			if(observer != null)	observer.moveMade(this);
 			return false;
 		}
 
 		
-		//for each column in the piece - fill in the appropriate blocks
-		for(int i = 0; i < pWidth[nextPiece][orient]; i++) {
-			
-			//from bottom to top of brick
-			for(int h = height+pBottom[nextPiece][orient][i]; h < height+pTop[nextPiece][orient][i]; h++) {
-				field[h][i+slot] = turn;
+		//for each row of the piece - fill in the blocks set in its mask
+		for(int h = 0; h < pieceHeight; h++) {
+			for(int mask = PieceCatalog.rowMask(o, slot, h); mask != 0; mask &= mask-1) {
+				field[height+h][Integer.numberOfTrailingZeros(mask)] = turn;
+				cols[Integer.numberOfTrailingZeros(mask)] |= 1 << (height+h);
 			}
 		}
 		
 		//adjust top
-		for(int c = 0; c < pWidth[nextPiece][orient]; c++) {
-			top[slot+c]=height+pTop[nextPiece][orient][c];
-		}
+		PieceCatalog.updateTop(top, o, slot, height);
 		
 		int rowsCleared = 0;
 		
 		//check for full rows - starting at the top
-		for(int r = height+pHeight[nextPiece][orient]-1; r >= height; r--) {
+		for(int r = height+pieceHeight-1; r >= height; r--) {
 			//check all columns in the row
 			boolean full = true;
 			for(int c = 0; c < COLS; c++) {
@@ -251,6 +293,11 @@ public class State {
 			if(full) {
 				rowsCleared++;
 				cleared++;
+				//drop the row from every column mask - the bits above it move down by one
+				int below = (1 << r) - 1;
+				for(int c = 0; c < COLS; c++) {
+					cols[c] = (cols[c] & below) | ((cols[c] >>> 1) & ~below);
+				}
 				//for each column
 				for(int c = 0; c < COLS; c++) {
 
@@ -269,68 +316,14 @@ public class State {
 		//pick a new piece
 		nextPiece = randomPiece();
 		
-
+		if(observer != null)	observer.moveMade(this);
 		
 		return true;
 	}
 	
-	public void draw() {
-		label.clear();
-		label.setPenRadius();
-		//outline board
-		label.line(0, 0, 0, ROWS+5);
-		label.line(COLS, 0, COLS, ROWS+5);
-		label.line(0, 0, COLS, 0);
-		label.line(0, ROWS-1, COLS, ROWS-1);
-		
-		//show bricks
-				
-		for(int c = 0; c < COLS; c++) {
-			for(int r = 0; r < top[c]; r++) {
-				if(field[r][c] != 0) {
-					drawBrick(c,r);
-				}
-			}
-		}
-		
-		for(int i = 0; i < COLS; i++) {
-			label.setPenColor(Color.red);
-			label.line(i, top[i], i+1, top[i]);
-			label.setPenColor();
-		}
-		
-		label.show();
-		
-		
+	//attaches an observer that is notified after every move, or detaches it if null
+	public void setObserver(StateObserver observer) {
+		this.observer = observer;
 	}
 	
-	public static final Color brickCol = Color.gray; 
-	
-	private void drawBrick(int c, int r) {
-		label.filledRectangleLL(c, r, 1, 1, brickCol);
-		label.rectangleLL(c, r, 1, 1);
-	}
-	
-	public void drawNext(int slot, int orient) {
-		for(int i = 0; i < pWidth[nextPiece][orient]; i++) {
-			for(int j = pBottom[nextPiece][orient][i]; j <pTop[nextPiece][orient][i]; j++) {
-				drawBrick(i+slot, j+ROWS+1);
-			}
-		}
-		label.show();
-	}
-	
-	//visualization
-	//clears the area where the next piece is shown (top)
-	public void clearNext() {
-		label.filledRectangleLL(0, ROWS+.9, COLS, 4.2, TLabel.DEFAULT_CLEAR_COLOR);
-		label.line(0, 0, 0, ROWS+5);
-		label.line(COLS, 0, COLS, ROWS+5);
-	}
-	
-
-	
-
 }
-
-
@@ -0,0 +1,6 @@
+//Watches a game. Attached to a State with setObserver(...), it is called after every move the State makes, including
+//the move that loses the game, on the thread that made the move.
+public interface StateObserver {
+	
+	void moveMade(State s);
+}
@@ -0,0 +1,84 @@
+import java.awt.Color;
+
+//Draws a State onto a TLabel. All of the game's AWT drawing lives here rather than in State, so the engine itself never
+//loads AWT. As a StateObserver it redraws the board and the next piece after every move, which is how an automatically
+//played game is shown; TFrame calls draw(), drawNext(...) and clearNext() itself when a game is played by hand.
+public class StateRenderer implements StateObserver {
+	
+	public static final Color brickCol = Color.gray;
+	
+	private final TLabel label;
+	private State s;
+	
+	public StateRenderer(TLabel label, State s) {
+		this.label = label;
+		this.s = s;
+	}
+	
+	//switches which state is drawn
+	public void bind(State s) {
+		this.s = s;
+	}
+	
+	@Override
+	public void moveMade(State s) {
+		bind(s);
+		draw();
+		clearNext();
+		drawNext(0, 0);
+	}
+	
+	public void draw() {
+		int[][] field = s.getField();
+		int[] top = s.getTop();
+		
+		label.clear();
+		label.setPenRadius();
+		//outline board
+		label.line(0, 0, 0, State.ROWS+5);
+		label.line(State.COLS, 0, State.COLS, State.ROWS+5);
+		label.line(0, 0, State.COLS, 0);
+		label.line(0, State.ROWS-1, State.COLS, State.ROWS-1);
+		
+		//show bricks
+		for(int c = 0; c < State.COLS; c++) {
+			for(int r = 0; r < top[c]; r++) {
+				if(field[r][c] != 0) {
+					drawBrick(c,r);
+				}
+			}
+		}
+		
+		for(int i = 0; i < State.COLS; i++) {
+			label.setPenColor(Color.red);
+			label.line(i, top[i], i+1, top[i]);
+			label.setPenColor();
+		}
+		
+		label.show();
+	}
+	
+	private void drawBrick(int c, int r) {
+		label.filledRectangleLL(c, r, 1, 1, brickCol);
+		label.rectangleLL(c, r, 1, 1);
+	}
+	
+	//draws the next piece above the board, at the given slot and orientation
+	public void drawNext(int slot, int orient) {
+		int o = PieceCatalog.orientIndex(s.getNextPiece(), orient);
+		
+		for(int i = 0; i < PieceCatalog.width(o); i++) {
+			for(int j = PieceCatalog.bottom(o, i); j < PieceCatalog.top(o, i); j++) {
+				drawBrick(i+slot, j+State.ROWS+1);
+			}
+		}
+		label.show();
+	}
+	
+	//clears the area where the next piece is shown (top)
+	public void clearNext() {
+		label.filledRectangleLL(0, State.ROWS+.9, State.COLS, 4.2, TLabel.DEFAULT_CLEAR_COLOR);
+		label.line(0, 0, 0, State.ROWS+5);
+		label.line(State.COLS, 0, State.COLS, State.ROWS+5);
+	}
+}
@@ -0,0 +1,216 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+//Races weight vectors against each other to find the best numSurvivors of them without playing every vector's games
+//to the end. The alive vectors play the same games in rounds (see PairedComparison), and after each round every vector
+//that at least numSurvivors other alive vectors beat with a one-sided confidence of z standard errors is eliminated:
+//it cannot be among the best, so its remaining games are saved. Vectors are eliminated one at a time, worst average
+//first, so at least numSurvivors of them are always left.
+//
+//A protected vector, such as the incumbent that the winners are compared against, plays every game, is never
+//eliminated and does not count as a rival of the others.
+public class StatisticalRace {
+	
+	private final int numCandidates;
+	private final int maxGames;
+	private final int numSurvivors;
+	private final double z;
+	private final boolean[] alive;
+	private final boolean[] isProtected;
+	private final int[][] scores; //[candidate][game], games 0 to numGames - 1 of a candidate are filled
+	private final boolean[][] lost; //[candidate][game], false if the game was stopped at a budget
+	private final int[] numGames;
+	private int gamesPlayed = 0;
+	
+	public StatisticalRace(int numCandidates, int maxGames, int numSurvivors, double z) {
+		this.numCandidates = numCandidates;
+		this.maxGames = maxGames;
+		this.numSurvivors = numSurvivors;
+		this.z = z;
+		alive = new boolean[numCandidates];
+		Arrays.fill(alive, true);
+		isProtected = new boolean[numCandidates];
+		scores = new int[numCandidates][maxGames];
+		lost = new boolean[numCandidates][maxGames];
+		numGames = new int[numCandidates];
+	}
+	
+	public void protect(int candidate) {
+		isProtected[candidate] = true;
+	}
+	
+    //================================================================================
+    // Getters
+    //================================================================================
+	
+	public boolean isAlive(int candidate) {
+		return alive[candidate];
+	}
+	
+	//The alive candidates, in increasing order - the ones that play the next round
+	public int[] getAlive() {
+		int[] result = new int[numCandidates];
+		int n = 0;
+		
+		for (int i = 0; i < numCandidates; i++) {
+			if (alive[i]) {
+				result[n++] = i;
+			}
+		}
+		
+		return Arrays.copyOf(result, n);
+	}
+	
+	//Games played by the alive candidates so far
+	public int getNumGames() {
+		int games = 0;
+		
+		for (int i = 0; i < numCandidates; i++) {
+			if (alive[i]) {
+				games = numGames[i];
+			}
+		}
+		
+		return games;
+	}
+	
+	public int getMaxGames() {
+		return maxGames;
+	}
+
+	public int getNumCandidates() {
+		return numCandidates;
+	}
+	
+	//Average score of the candidate over the games it played before it was eliminated, if it was
+	public double getAverage(int candidate) {
+		double sum = 0;
+		
+		for (int i = 0; i < numGames[candidate]; i++) {
+			sum += scores[candidate][i];
+		}
+		
+		return numGames[candidate] == 0 ? 0 : sum / numGames[candidate];
+	}
+	
+	//Average score of the candidate extrapolated from its games, for games stopped at a budget (see
+	//TruncatedScoreEstimate)
+	public TruncatedScoreEstimate getEstimate(int candidate) {
+		return new TruncatedScoreEstimate(Arrays.copyOf(scores[candidate], numGames[candidate]),
+				Arrays.copyOf(lost[candidate], numGames[candidate]));
+	}
+	
+	//Games added to the race. A caller that plays rounds ahead of the race may have played more of them.
+	public int getGamesPlayed() {
+		return gamesPlayed;
+	}
+	
+	//Games that playing every candidate to the end would have needed on top of the gamesPlayed games actually played
+	public int getGamesSaved(int gamesPlayed) {
+		return numCandidates * maxGames - gamesPlayed;
+	}
+	
+	//True once every alive candidate played maxGames games, or the race is down to numSurvivors candidates and none
+	//of them is protected
+	public boolean isFinished() {
+		if (getNumGames() == maxGames) {
+			return true;
+		}
+		
+		int racing = 0;
+		
+		for (int i = 0; i < numCandidates; i++) {
+			if (alive[i]) {
+				if (isProtected[i]) {
+					return false;
+				}
+				
+				racing++;
+			}
+		}
+		
+		return racing <= numSurvivors;
+	}
+	
+    //================================================================================
+    // Racing
+    //================================================================================
+	
+	//Adds a round of games that were all played until they were lost.
+	public void addRound(int[] candidates, int[][] roundScores) {
+		boolean[][] roundLost = new boolean[candidates.length][];
+		
+		for (int i = 0; i < candidates.length; i++) {
+			roundLost[i] = new boolean[roundScores[i].length];
+			Arrays.fill(roundLost[i], true);
+		}
+		
+		addRound(candidates, roundScores, roundLost);
+	}
+	
+	//Adds a round of games, played by the given candidates (getAlive()) on the same seeds - roundScores[i][g] is the
+	//score of candidates[i] on the g-th seed, and roundLost[i][g] whether that game was lost rather than stopped at a
+	//budget - and eliminates the candidates that are now beaten. Truncated games are compared by their truncated
+	//scores.
+	public void addRound(int[] candidates, int[][] roundScores, boolean[][] roundLost) {
+		for (int i = 0; i < candidates.length; i++) {
+			int c = candidates[i];
+			System.arraycopy(roundScores[i], 0, scores[c], numGames[c], roundScores[i].length);
+			System.arraycopy(roundLost[i], 0, lost[c], numGames[c], roundLost[i].length);
+			numGames[c] += roundScores[i].length;
+			gamesPlayed += roundScores[i].length;
+		}
+		
+		eliminate();
+	}
+	
+	private void eliminate() {
+		int games = getNumGames();
+		int[] racing = new int[numCandidates];
+		int numRacing = 0;
+		
+		for (int i = 0; i < numCandidates; i++) {
+			if (alive[i] && !isProtected[i]) {
+				racing[numRacing++] = i;
+			}
+		}
+		
+		//Worst average first, so that a candidate is only ever eliminated by rivals that are still alive
+		Integer[] order = new Integer[numRacing];
+		final double[] averages = new double[numCandidates];
+		
+		for (int i = 0; i < numRacing; i++) {
+			order[i] = racing[i];
+			averages[racing[i]] = getAverage(racing[i]);
+		}
+		
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(averages[a], averages[b]);
+			}
+		});
+		
+		int numAlive = numRacing;
+		
+		for (int i = 0; i < numRacing && numAlive > numSurvivors; i++) {
+			int c = order[i];
+			int[] cScores = Arrays.copyOf(scores[c], games);
+			int beatenBy = 0;
+			
+			for (int j = 0; j < numRacing && beatenBy < numSurvivors; j++) {
+				int rival = racing[j];
+				
+				if (rival != c && alive[rival]
+						&& new PairedComparison(Arrays.copyOf(scores[rival], games), cScores).isBetter(z)) {
+					beatenBy++;
+				}
+			}
+			
+			if (beatenBy >= numSurvivors) {
+				alive[c] = false;
+				numAlive--;
+			}
+		}
+	}
+}
@@ -14,6 +14,7 @@ public class TFrame extends JFrame implements KeyListener{
 	private static final long serialVersionUID = 1L;
 	public TLabel label = new TLabel(300,700);
 	public State s;
+	public StateRenderer renderer;
 	
 	public int orient, slot;
 	
@@ -25,7 +26,7 @@ public class TFrame extends JFrame implements KeyListener{
 	//constructor
 	public TFrame (State s){
 		this.s = s;
-		s.label = label;
+		renderer = new StateRenderer(label, s);
 		setResizable(false);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);            // closes all windows when this is closed
 		setTitle("Tetris BKW");
@@ -40,16 +41,15 @@ public class TFrame extends JFrame implements KeyListener{
 	
 	//switches which state is attached to this TFrame
 	public void bindState(State s) {
-		if(s!= null)	s.label = null;
 		this.s = s;
-		s.label = label;
+		renderer.bind(s);
 	}
 	
 	///
 	/// ADDED BY DON (AKA Pimp Masta) 1/22/09
 	///
 	public TFrame (){
-		s.label = label;
+		renderer = new StateRenderer(label, s);
 		setResizable(false);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);            // closes all windows when this is closed
 		setTitle("Eric Whitman's Tetris Simulator");
@@ -67,38 +67,38 @@ public class TFrame extends JFrame implements KeyListener{
 			case(MANUAL): {
 				switch(e.getKeyCode()) {
 					case(KeyEvent.VK_RIGHT): {
-						if(slot < State.COLS-State.pWidth[s.nextPiece][orient])	slot++;
-						s.clearNext();
-						s.drawNext(slot, orient);
+						if(slot < State.COLS-PieceCatalog.width(PieceCatalog.orientIndex(s.nextPiece, orient)))	slot++;
+						renderer.clearNext();
+						renderer.drawNext(slot, orient);
 						break;
 					}
 					case(KeyEvent.VK_LEFT): {
 						if(slot > 0)	slot--;
-						s.clearNext();
-						s.drawNext(slot, orient);
+						renderer.clearNext();
+						renderer.drawNext(slot, orient);
 						break;
 					}
 					case(KeyEvent.VK_UP): {
 						orient++;
-						if(orient%State.pOrients[s.nextPiece]==0)	orient = 0;
-						if(slot > State.COLS-State.pWidth[s.nextPiece][orient])
-							slot = State.COLS-State.pWidth[s.nextPiece][orient];
-						s.clearNext();
-						s.drawNext(slot, orient);
+						if(orient%PieceCatalog.numOrients(s.nextPiece)==0)	orient = 0;
+						if(slot > State.COLS-PieceCatalog.width(PieceCatalog.orientIndex(s.nextPiece, orient)))
+							slot = State.COLS-PieceCatalog.width(PieceCatalog.orientIndex(s.nextPiece, orient));
+						renderer.clearNext();
+						renderer.drawNext(slot, orient);
 						break;
 					}
 					case(KeyEvent.VK_DOWN): {
 						if(!s.makeMove(orient, slot))	mode = NONE;
-						if(orient >= State.pOrients[s.nextPiece])	orient = 0;
-						if(slot > State.COLS-State.pWidth[s.nextPiece][orient])
-							slot = State.COLS-State.pWidth[s.nextPiece][orient];
+						if(orient >= PieceCatalog.numOrients(s.nextPiece))	orient = 0;
+						if(slot > State.COLS-PieceCatalog.width(PieceCatalog.orientIndex(s.nextPiece, orient)))
+							slot = State.COLS-PieceCatalog.width(PieceCatalog.orientIndex(s.nextPiece, orient));
 						
-						s.draw();
+						renderer.draw();
 						if(mode == NONE)	{
 							label.text(State.COLS/2.0, State.ROWS/2.0, "You Lose");
 						}
-						s.clearNext();
-						s.drawNext(slot, orient);
+						renderer.clearNext();
+						renderer.drawNext(slot, orient);
 						break;
 					}
 					default:
@@ -145,8 +145,8 @@ public class TFrame extends JFrame implements KeyListener{
 	public static void main(String[] args) {
 		State s = new State();
 		TFrame t = new TFrame(s);
-		s.draw();
-		s.drawNext(0,0);
+		t.renderer.draw();
+		t.renderer.drawNext(0,0);
 		//t.save("picture.png");
 		
 	}
@@ -0,0 +1,66 @@
+//Estimates the average score of a weight vector from games that were stopped at a move or row budget. Tetris game
+//lengths are close to geometric - a given policy loses with roughly the same small probability on every row it
+//clears - so the score is modelled as exponential with a constant loss rate per row, which is the number of games
+//lost over the rows cleared in all games (truncated or not). The estimated average score is the inverse of that rate:
+//the rows cleared in all games over the number of games lost. Without truncation, this is the plain average.
+//
+//The confidence interval treats the number of games lost as Poisson, with the square root transform, which keeps
+//the interval sensible when only a few games (or none) were lost within the budget.
+public class TruncatedScoreEstimate {
+	
+	private final int numGames;
+	private final int numLost;
+	private final long totalRows;
+	
+	//scores[i] is the rows cleared in game i, lost[i] whether it was lost (rather than stopped at the budget)
+	public TruncatedScoreEstimate(int[] scores, boolean[] lost) {
+		if (scores.length != lost.length) {
+			throw new IllegalArgumentException("Every game must have a score and a lost flag");
+		}
+		
+		numGames = scores.length;
+		int lostGames = 0;
+		long rows = 0;
+		
+		for (int i = 0; i < numGames; i++) {
+			rows += scores[i];
+			
+			if (lost[i]) {
+				lostGames++;
+			}
+		}
+		
+		numLost = lostGames;
+		totalRows = rows;
+	}
+	
+	public int getNumGames() {
+		return numGames;
+	}
+	
+	public int getNumTruncated() {
+		return numGames - numLost;
+	}
+	
+	//True if at least one game was lost, without which the average cannot be bounded from above
+	public boolean isBounded() {
+		return numLost > 0;
+	}
+	
+	//Estimated average score, infinite if no game was lost
+	public double getMean() {
+		return numLost == 0 ? Double.POSITIVE_INFINITY : (double) totalRows / numLost;
+	}
+	
+	//Lower end of the two-sided confidence interval of z standard errors (e.g. 1.96 for 95%)
+	public double getLower(double z) {
+		double root = Math.sqrt(numLost) + z / 2;
+		return totalRows / (root * root);
+	}
+	
+	//Upper end of the two-sided confidence interval of z standard errors, infinite if too few games were lost
+	public double getUpper(double z) {
+		double root = Math.sqrt(numLost) - z / 2;
+		return root <= 0 ? Double.POSITIVE_INFINITY : totalRows / (root * root);
+	}
+}